@@ -0,0 +1,71 @@
+package tw.com.sc.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.BeanUtils;
+
+import tw.com.sc.model.txmsg.TandemMessage;
+import tw.com.sc.model.txmsg.TandemMessageHelper;
+import tw.com.sc.model.txmsg.TandemMessageRequest;
+import tw.com.sc.model.txmsg.TandemMessageResponse;
+
+/**
+ * 電文物件之間複製欄位的效能量測（buildResponse / getMessageBody）
+ * beanUtils* 為改用 MsgInDataMapper 之前以 BeanUtils.copyProperties 複製的作法，作為比較基準。
+ * 執行方式: java -jar benchmarks/target/benchmarks.jar MessageCopyBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageCopyBenchmark {
+
+    @Param({ "64", "1024", "8192" })
+    private int payloadSize;
+
+    private TandemMessageRequest request;
+
+    @Setup
+    public void setup() {
+        request = TandemMessageFixtures.request(payloadSize);
+    }
+
+    @Benchmark
+    public TandemMessageResponse buildResponse() {
+        return TandemMessageHelper.buildResponse(request);
+    }
+
+    @Benchmark
+    public TandemMessage getMessageBody() {
+        return TandemMessageHelper.RequestSerializer.getMessageBody(request);
+    }
+
+    @Benchmark
+    public TandemMessageResponse beanUtilsBuildResponse() {
+        TandemMessageResponse response = new TandemMessageResponse();
+        response.setMsgInData(new TandemMessageResponse.MsgInData());
+        BeanUtils.copyProperties(request.getMsgInData(), response.getMsgInData());
+        return response;
+    }
+
+    @Benchmark
+    public TandemMessage beanUtilsGetMessageBody() {
+        TandemMessage tandemMessage = new TandemMessage();
+        tandemMessage.setMsgInData(new TandemMessage.MsgInData());
+        BeanUtils.copyProperties(request.getMsgInData(), tandemMessage.getMsgInData());
+        return tandemMessage;
+    }
+}
@@ -0,0 +1,109 @@
+package tw.com.sc.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tw.com.sc.model.txmsg.RequestMessageSerializer;
+import tw.com.sc.model.txmsg.ResponseMessageSerializer;
+import tw.com.sc.model.txmsg.TandemMessage;
+import tw.com.sc.model.txmsg.TandemMessageHelper;
+import tw.com.sc.model.txmsg.TandemMessageRequest;
+import tw.com.sc.model.txmsg.TandemMessageResponse;
+import tw.com.sc.model.txmsg.TandemMessageSerializer;
+
+/**
+ * txmsg 序列化/反序列化的效能量測
+ * 執行方式: java -jar benchmarks/target/benchmarks.jar SerializerBenchmark -prof gc
+ * 加上 -prof gc 可取得每次操作的配置量 (gc.alloc.rate.norm)。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializerBenchmark {
+
+    @Param({ "64", "1024", "8192" })
+    private int payloadSize;
+
+    private TandemMessageRequest request;
+    private TandemMessageResponse response;
+    private TandemMessage tandemMessage;
+
+    private String requestJson;
+    private String responseJson;
+    private String tandemMessageJson;
+
+    @Setup
+    public void setup() {
+        request = TandemMessageFixtures.request(payloadSize);
+        response = TandemMessageFixtures.response(payloadSize);
+        tandemMessage = TandemMessageFixtures.tandemMessage(payloadSize);
+
+        requestJson = RequestMessageSerializer.toJson(request);
+        responseJson = ResponseMessageSerializer.toJson(response);
+        tandemMessageJson = TandemMessageSerializer.toJson(tandemMessage);
+    }
+
+    @Benchmark
+    public String requestToJson() {
+        return RequestMessageSerializer.toJson(request);
+    }
+
+    @Benchmark
+    public TandemMessageRequest requestFromJson() {
+        return RequestMessageSerializer.fromJson(requestJson);
+    }
+
+    @Benchmark
+    public String responseToJson() {
+        return ResponseMessageSerializer.toJson(response);
+    }
+
+    @Benchmark
+    public TandemMessageResponse responseFromJson() {
+        return ResponseMessageSerializer.fromJson(responseJson);
+    }
+
+    @Benchmark
+    public String tandemMessageToJson() {
+        return TandemMessageSerializer.toJson(tandemMessage);
+    }
+
+    @Benchmark
+    public TandemMessage tandemMessageFromJson() {
+        return TandemMessageSerializer.fromJson(tandemMessageJson);
+    }
+
+    @Benchmark
+    public String helperRequestToJson() {
+        return TandemMessageHelper.RequestSerializer.toJson(request);
+    }
+
+    @Benchmark
+    public TandemMessageRequest helperRequestFromJson() {
+        return TandemMessageHelper.RequestSerializer.fromJson(requestJson);
+    }
+
+    @Benchmark
+    public String helperResponseToJson() {
+        return TandemMessageHelper.ResponseSerializer.toJson(response);
+    }
+
+    @Benchmark
+    public TandemMessageResponse helperResponseFromJson() {
+        return TandemMessageHelper.ResponseSerializer.fromJson(responseJson);
+    }
+}
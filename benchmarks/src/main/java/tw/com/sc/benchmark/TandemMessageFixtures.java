@@ -0,0 +1,76 @@
+package tw.com.sc.benchmark;
+
+import tw.com.sc.model.txmsg.TandemMessage;
+import tw.com.sc.model.txmsg.TandemMessageRequest;
+import tw.com.sc.model.txmsg.TandemMessageResponse;
+
+/**
+ * Benchmark 使用的測試電文
+ * MSG-IN-MSG-DATA 的長度由 payloadSize 決定，其餘欄位使用固定的實際長度
+ */
+final class TandemMessageFixtures {
+
+    private TandemMessageFixtures() {
+    }
+
+    static TandemMessageRequest request(int payloadSize) {
+        TandemMessageRequest request = new TandemMessageRequest();
+        request.setClientId("Y2xpZW50LTAx");
+        request.setClientSecret("c2VjcmV0LXZhbHVlLWZvci1iZW5jaG1hcms=");
+        TandemMessageRequest.MsgInData msgInData = new TandemMessageRequest.MsgInData();
+        msgInData.setMsgSessionId("6f1c2a9e-3b7d-4e55-9a0c-1d2e3f4a5b6c");
+        msgInData.setMsgStrnkeyNo("30011002");
+        msgInData.setMsgFiller("");
+        msgInData.setMsgReturnCode("");
+        msgInData.setMsgTimeSeq("20241018103500123");
+        msgInData.setMsgTranDirection("I");
+        msgInData.setMsgLength(String.valueOf(payloadSize));
+        msgInData.setMsgInMsgData(payload(payloadSize));
+        request.setMsgInData(msgInData);
+        return request;
+    }
+
+    static TandemMessageResponse response(int payloadSize) {
+        TandemMessageResponse response = new TandemMessageResponse();
+        response.setResultCode("0000");
+        response.setResultMessage("資料轉發（處理）成功");
+        TandemMessageResponse.MsgInData msgInData = new TandemMessageResponse.MsgInData();
+        msgInData.setMsgSessionId("6f1c2a9e-3b7d-4e55-9a0c-1d2e3f4a5b6c");
+        msgInData.setMsgStrnkeyNo("30011002");
+        msgInData.setMsgFiller("");
+        msgInData.setMsgReturnCode(TandemMessage.DEFAULT_SUCCESS_CODE);
+        msgInData.setMsgTimeSeq("20241018103500123");
+        msgInData.setMsgTranDirection("O");
+        msgInData.setMsgLength(String.valueOf(payloadSize));
+        msgInData.setMsgInMsgData(payload(payloadSize));
+        response.setMsgInData(msgInData);
+        return response;
+    }
+
+    static TandemMessage tandemMessage(int payloadSize) {
+        TandemMessage tandemMessage = new TandemMessage();
+        TandemMessage.MsgInData msgInData = new TandemMessage.MsgInData();
+        msgInData.setMsgSessionId("6f1c2a9e-3b7d-4e55-9a0c-1d2e3f4a5b6c");
+        msgInData.setMsgStrnkeyNo("30011002");
+        msgInData.setMsgFiller("");
+        msgInData.setMsgReturnCode(TandemMessage.DEFAULT_SUCCESS_CODE);
+        msgInData.setMsgTimeSeq("20241018103500123");
+        msgInData.setMsgTranDirection("O");
+        msgInData.setMsgLength(String.valueOf(payloadSize));
+        msgInData.setMsgInMsgData(payload(payloadSize));
+        tandemMessage.setMsgInData(msgInData);
+        return tandemMessage;
+    }
+
+    /**
+     * 模擬固定長度的主機電文內容（英數字與空白）
+     */
+    private static String payload(int size) {
+        String pattern = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ     ";
+        StringBuilder sb = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            sb.append(pattern.charAt(i % pattern.length()));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,158 @@
+package tw.com.sc.audit;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import tw.com.sc.model.PayloadAuditConfig;
+import tw.com.sc.model.txmsg.TandemMessage;
+import tw.com.sc.model.txmsg.TandemMessageRequest;
+import tw.com.sc.model.txmsg.TandemMessageResponse;
+import tw.com.sc.model.txmsg.TxMessageCodec;
+
+/**
+ * 電文內容稽核記錄
+ * 取樣、遮罩後以一行 JSON (time, event, thread, sessionId, strnkey, payload) 寫入 payload-audit logger，
+ * 檔案、換檔、壓縮與非同步寫入都由 logback.xml 中的 appender 設定。
+ */
+@Component
+public class PayloadAuditLogger {
+
+    /**
+     * logback.xml 中設定稽核檔案的 logger 名稱
+     */
+    private static final String AUDIT_LOGGER_NAME = "payload-audit";
+
+    private static final Logger logger = LoggerFactory.getLogger(PayloadAuditLogger.class);
+    private static final Logger auditLogger = LoggerFactory.getLogger(AUDIT_LOGGER_NAME);
+
+    private static final String MASK = "****";
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private final PayloadAuditConfig config;
+    private final ObjectMapper objectMapper = TxMessageCodec.objectMapper();
+    private final Set<String> maskFields;
+    private final Map<String, StrnkeyRule> strnkeyRules = new HashMap<>();
+
+    public PayloadAuditLogger(PayloadAuditConfig config) {
+        this.config = config;
+        this.maskFields = new HashSet<>(config.getMaskFields());
+        config.getStrnkeys().forEach((strnkey, strnkeyConfig) -> {
+            Set<String> fields = new HashSet<>(maskFields);
+            fields.addAll(strnkeyConfig.getMaskFields());
+            double sampleRate = strnkeyConfig.getSampleRate() != null
+                    ? strnkeyConfig.getSampleRate()
+                    : config.getSampleRate();
+            strnkeyRules.put(strnkey, new StrnkeyRule(sampleRate, fields));
+        });
+
+        if (config.isEnabled()) {
+            logger.info("電文稽核記錄寫入 {} logger，取樣比例 {}", AUDIT_LOGGER_NAME, config.getSampleRate());
+        }
+    }
+
+    public void record(String event, TandemMessageRequest message) {
+        TandemMessageRequest.MsgInData msgInData = message != null ? message.getMsgInData() : null;
+        record(event, msgInData != null ? msgInData.getMsgSessionId() : null,
+                msgInData != null ? msgInData.getMsgStrnkeyNo() : null, message);
+    }
+
+    public void record(String event, TandemMessageResponse message) {
+        TandemMessageResponse.MsgInData msgInData = message != null ? message.getMsgInData() : null;
+        record(event, msgInData != null ? msgInData.getMsgSessionId() : null,
+                msgInData != null ? msgInData.getMsgStrnkeyNo() : null, message);
+    }
+
+    public void record(String event, TandemMessage message) {
+        TandemMessage.MsgInData msgInData = message != null ? message.getMsgInData() : null;
+        record(event, msgInData != null ? msgInData.getMsgSessionId() : null,
+                msgInData != null ? msgInData.getMsgStrnkeyNo() : null, message);
+    }
+
+    /**
+     * 記錄一筆電文內容，event 為記錄的位置（例如 gateway.request）
+     */
+    public void record(String event, String sessionId, String strnkey, Object payload) {
+        if (!config.isEnabled() || payload == null || !auditLogger.isInfoEnabled()
+                || !isSampled(sessionId, strnkey)) {
+            return;
+        }
+        try {
+            auditLogger.info(toJson(event, sessionId, strnkey, payload));
+        } catch (Exception e) {
+            logger.warn("產生電文稽核記錄失敗: {}", e.getMessage());
+        }
+    }
+
+    private boolean isSampled(String sessionId, String strnkey) {
+        StrnkeyRule rule = strnkey != null ? strnkeyRules.get(strnkey) : null;
+        double sampleRate = rule != null ? rule.sampleRate : config.getSampleRate();
+        if (sampleRate >= 1) {
+            return true;
+        }
+        if (sampleRate <= 0) {
+            return false;
+        }
+        if (sessionId == null) {
+            return ThreadLocalRandom.current().nextDouble() < sampleRate;
+        }
+        // 打散 hashCode，連號的 sessionId 才不會整段被取樣或整段略過
+        int hash = sessionId.hashCode() * 0x9E3779B9;
+        return (hash >>> 8) < sampleRate * (1 << 24);
+    }
+
+    private String toJson(String event, String sessionId, String strnkey, Object payload) throws Exception {
+        JsonNode payloadNode = objectMapper.valueToTree(payload);
+        StrnkeyRule rule = strnkey != null ? strnkeyRules.get(strnkey) : null;
+        mask(payloadNode, rule != null ? rule.maskFields : maskFields);
+
+        ObjectNode entry = objectMapper.createObjectNode();
+        entry.put("time", TIME_FORMAT.format(LocalDateTime.now()));
+        entry.put("event", event);
+        entry.put("thread", Thread.currentThread().getName());
+        entry.put("sessionId", sessionId);
+        entry.put("strnkey", strnkey);
+        entry.set("payload", payloadNode);
+        return objectMapper.writeValueAsString(entry);
+    }
+
+    private void mask(JsonNode node, Set<String> fields) {
+        if (fields.isEmpty() || !(node instanceof ObjectNode objectNode)) {
+            return;
+        }
+        Iterator<Map.Entry<String, JsonNode>> iterator = objectNode.fields();
+        while (iterator.hasNext()) {
+            Map.Entry<String, JsonNode> field = iterator.next();
+            if (fields.contains(field.getKey())) {
+                if (!field.getValue().isNull()) {
+                    field.setValue(objectNode.textNode(MASK));
+                }
+            } else {
+                mask(field.getValue(), fields);
+            }
+        }
+    }
+
+    private static class StrnkeyRule {
+        private final double sampleRate;
+        private final Set<String> maskFields;
+
+        private StrnkeyRule(double sampleRate, Set<String> maskFields) {
+            this.sampleRate = sampleRate;
+            this.maskFields = maskFields;
+        }
+    }
+}
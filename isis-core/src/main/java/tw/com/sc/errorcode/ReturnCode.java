@@ -27,6 +27,8 @@ public enum ReturnCode {
     // API 錯誤 (5001-5999)
     UNAUTHORIZED("5001", "未授權"),
     BAD_REQUEST("5002", "錯誤的請求"),
+    SERVER_BUSY("5003", "交易量超過系統負荷，請稍後再試"),
+    CLIENT_THROTTLED("5004", "超過用戶端的交易量限制，請稍後再試"),
 
     // 系統層級錯誤 (9000-9999)
     SYSTEM_ERROR("9000", "系統發生未預期錯誤");
@@ -0,0 +1,43 @@
+package tw.com.sc.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 電文內容稽核記錄 (payload audit) 的設定
+ * 電文內容不再寫入一般 log，改寫入 payload-audit logger，檔案與換檔設定在 logback.xml。
+ */
+@ConfigurationProperties(prefix = "audit.payload")
+@Component
+@Data
+public class PayloadAuditConfig {
+    private boolean enabled = true;
+    /**
+     * 記錄的比例 (0 ~ 1)，依 MSG-SESSION-ID 決定，同一筆交易的請求與回應會一起記錄或一起略過
+     */
+    private double sampleRate = 1.0;
+    /**
+     * 內容以 **** 取代的欄位名稱
+     */
+    private List<String> maskFields = new ArrayList<>(List.of("CLIENT-SECRET"));
+    /**
+     * 依 MSG-STRNKEY-NO 覆寫 sampleRate 及追加 maskFields
+     */
+    private Map<String, StrnkeyConfig> strnkeys = new HashMap<>();
+
+    @Data
+    public static class StrnkeyConfig {
+        /**
+         * 未設定時使用上層的 sampleRate
+         */
+        private Double sampleRate;
+        private List<String> maskFields = new ArrayList<>();
+    }
+}
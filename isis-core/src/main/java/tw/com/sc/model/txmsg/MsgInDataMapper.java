@@ -0,0 +1,57 @@
+package tw.com.sc.model.txmsg;
+
+/**
+ * MSG-IN-DATA 欄位複製
+ * 三種電文的 MsgInData 欄位相同，直接呼叫 getter/setter 複製，取代 BeanUtils.copyProperties 的反射與 PropertyDescriptor 查找。
+ * 新增欄位時三個類別與此處需同步修改。
+ */
+final class MsgInDataMapper {
+
+    private MsgInDataMapper() {
+    }
+
+    static TandemMessageResponse.MsgInData toResponse(TandemMessageRequest.MsgInData source) {
+        TandemMessageResponse.MsgInData target = new TandemMessageResponse.MsgInData();
+        if (source == null) {
+            return target;
+        }
+        target.setMsgSessionId(source.getMsgSessionId());
+        target.setMsgStrnkeyNo(source.getMsgStrnkeyNo());
+        target.setMsgFiller(source.getMsgFiller());
+        target.setMsgReturnCode(source.getMsgReturnCode());
+        target.setMsgTimeSeq(source.getMsgTimeSeq());
+        target.setMsgTranDirection(source.getMsgTranDirection());
+        target.setMsgLength(source.getMsgLength());
+        target.setMsgInMsgData(source.getMsgInMsgData());
+        return target;
+    }
+
+    static TandemMessage.MsgInData toTandemMessage(TandemMessageRequest.MsgInData source) {
+        TandemMessage.MsgInData target = new TandemMessage.MsgInData();
+        if (source == null) {
+            return target;
+        }
+        target.setMsgSessionId(source.getMsgSessionId());
+        target.setMsgStrnkeyNo(source.getMsgStrnkeyNo());
+        target.setMsgFiller(source.getMsgFiller());
+        target.setMsgReturnCode(source.getMsgReturnCode());
+        target.setMsgTimeSeq(source.getMsgTimeSeq());
+        target.setMsgTranDirection(source.getMsgTranDirection());
+        target.setMsgLength(source.getMsgLength());
+        target.setMsgInMsgData(source.getMsgInMsgData());
+        return target;
+    }
+
+    static TandemMessageResponse.MsgInData copy(TandemMessageResponse.MsgInData source) {
+        TandemMessageResponse.MsgInData target = new TandemMessageResponse.MsgInData();
+        target.setMsgSessionId(source.getMsgSessionId());
+        target.setMsgStrnkeyNo(source.getMsgStrnkeyNo());
+        target.setMsgFiller(source.getMsgFiller());
+        target.setMsgReturnCode(source.getMsgReturnCode());
+        target.setMsgTimeSeq(source.getMsgTimeSeq());
+        target.setMsgTranDirection(source.getMsgTranDirection());
+        target.setMsgLength(source.getMsgLength());
+        target.setMsgInMsgData(source.getMsgInMsgData());
+        return target;
+    }
+}
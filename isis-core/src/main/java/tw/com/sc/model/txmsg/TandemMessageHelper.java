@@ -1,9 +1,6 @@
 package tw.com.sc.model.txmsg;
 
-import org.springframework.beans.BeanUtils;
-
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 
 
@@ -13,9 +10,19 @@ public class TandemMessageHelper {
 
     public static TandemMessageResponse buildResponse(TandemMessageRequest request) {
         TandemMessageResponse response = new TandemMessageResponse();
-        response.setMsgInData(new TandemMessageResponse.MsgInData());
+        // msgInData 為空時（BAD_REQUEST）回傳空的 MSG-IN-DATA
+        response.setMsgInData(MsgInDataMapper.toResponse(request.getMsgInData()));
+        return response;
+    }
 
-        BeanUtils.copyProperties(request.getMsgInData(), response.getMsgInData());
+    /**
+     * 複製回應電文，同一筆回應要交給多個呼叫端時使用，避免彼此修改到同一個物件
+     */
+    public static TandemMessageResponse copyResponse(TandemMessageResponse source) {
+        TandemMessageResponse response = new TandemMessageResponse();
+        response.setResultCode(source.getResultCode());
+        response.setResultMessage(source.getResultMessage());
+        response.setMsgInData(source.getMsgInData() == null ? null : MsgInDataMapper.copy(source.getMsgInData()));
         return response;
     }
 
@@ -23,11 +30,10 @@ public class TandemMessageHelper {
 
 
         private RequestSerializer() {}
-        private static final ObjectMapper objectMapper = new ObjectMapper();
 
         public static String toJson(TandemMessageRequest message) {
             try {
-                return objectMapper.writeValueAsString(message);
+                return TxMessageCodec.writeValueAsString(message);
             } catch (JsonProcessingException e) {
                 throw new RuntimeException("Failed to serialize to JSON: " + e.getMessage(), e);
             }
@@ -35,7 +41,7 @@ public class TandemMessageHelper {
 
         public static TandemMessageRequest fromJson(String json) {
             try {
-                return objectMapper.readValue(json, TandemMessageRequest.class);
+                return TxMessageCodec.readValue(json, TandemMessageRequest.class);
             } catch (JsonProcessingException e) {
                 throw new RuntimeException("Failed to deserialize from JSON: " + e.getMessage(), e);
             }
@@ -47,22 +53,20 @@ public class TandemMessageHelper {
             }
 
             TandemMessage tandemMessage = new TandemMessage();
-            tandemMessage.setMsgInData(new TandemMessage.MsgInData());
-            BeanUtils.copyProperties(request.getMsgInData(), tandemMessage.getMsgInData());
+            tandemMessage.setMsgInData(MsgInDataMapper.toTandemMessage(request.getMsgInData()));
             return tandemMessage;
         }
     }
 
     public class ResponseSerializer {
 
-        private static final ObjectMapper objectMapper = new ObjectMapper();
     
         private ResponseSerializer() {
         }
     
         public static TandemMessageResponse fromJson(String json) {
             try {
-                return objectMapper.readValue(json, TandemMessageResponse.class);
+                return TxMessageCodec.readValue(json, TandemMessageResponse.class);
             } catch (JsonProcessingException e) {
                 throw new RuntimeException("Failed to parse JSON: " + e.getMessage(), e);
             }
@@ -70,7 +74,7 @@ public class TandemMessageHelper {
     
         public static String toJson(TandemMessageResponse message) {
             try {
-                return objectMapper.writeValueAsString(message);
+                return TxMessageCodec.writeValueAsString(message);
             } catch (JsonProcessingException e) {
                 throw new RuntimeException("Failed to serialize to JSON: " + e.getMessage(), e);
             }
@@ -0,0 +1,115 @@
+package tw.com.sc.model.txmsg;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * txmsg 電文共用的 JSON 設定
+ * 所有電文序列化（MQ 訊息與 Tandem API）共用同一個 ObjectMapper，並預先建立各電文型別的 ObjectReader / ObjectWriter，
+ * 避免每次呼叫都依型別查找 serializer。ObjectReader / ObjectWriter 不可變且執行緒安全，可直接共用。
+ * 序列化相關的調整集中在此處。
+ * 解析維持 Jackson 預設的嚴格模式，電文含未知欄位（例如拼錯的 MSG-* 欄位）時視為錯誤。
+ */
+public final class TxMessageCodec {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    /**
+     * 忽略未知欄位的版本，只給原本就採用 Spring 預設（寬鬆）設定的元件使用
+     */
+    private static final ObjectMapper LENIENT_OBJECT_MAPPER = OBJECT_MAPPER.copy()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private static final ObjectReader REQUEST_READER = OBJECT_MAPPER.readerFor(TandemMessageRequest.class);
+    private static final ObjectWriter REQUEST_WRITER = OBJECT_MAPPER.writerFor(TandemMessageRequest.class);
+    private static final ObjectReader RESPONSE_READER = OBJECT_MAPPER.readerFor(TandemMessageResponse.class);
+    private static final ObjectWriter RESPONSE_WRITER = OBJECT_MAPPER.writerFor(TandemMessageResponse.class);
+    private static final ObjectReader TANDEM_MESSAGE_READER = OBJECT_MAPPER.readerFor(TandemMessage.class);
+    private static final ObjectWriter TANDEM_MESSAGE_WRITER = OBJECT_MAPPER.writerFor(TandemMessage.class);
+
+    private TxMessageCodec() {
+    }
+
+    public static <T> T readValue(String json, Class<T> type) throws JsonProcessingException {
+        return readerFor(type).readValue(json);
+    }
+
+    public static <T> T readValue(InputStream in, Class<T> type) throws IOException {
+        return readerFor(type).readValue(in);
+    }
+
+    public static <T> T readValue(Reader reader, Class<T> type) throws IOException {
+        return readerFor(type).readValue(reader);
+    }
+
+    public static String writeValueAsString(Object value) throws JsonProcessingException {
+        return writerFor(value).writeValueAsString(value);
+    }
+
+    /**
+     * 以 UTF-8 寫入，完成後會關閉 out
+     */
+    public static void writeValue(OutputStream out, Object value) throws IOException {
+        writerFor(value).writeValue(out, value);
+    }
+
+    /**
+     * 寫入字元串流，完成後會關閉 writer
+     */
+    public static void writeValue(Writer writer, Object value) throws IOException {
+        writerFor(value).writeValue(writer, value);
+    }
+
+    /**
+     * 共用的 ObjectMapper，供 HTTP message converter 等需要 ObjectMapper 的元件使用，請勿再修改其設定
+     */
+    public static ObjectMapper objectMapper() {
+        return OBJECT_MAPPER;
+    }
+
+    /**
+     * 忽略未知欄位的 ObjectMapper，與 Spring 預設的 RestTemplate 設定相同，供 Tandem API 的 HTTP message converter 使用，
+     * 請勿再修改其設定
+     */
+    public static ObjectMapper lenientObjectMapper() {
+        return LENIENT_OBJECT_MAPPER;
+    }
+
+    private static ObjectReader readerFor(Class<?> type) {
+        if (type == TandemMessageRequest.class) {
+            return REQUEST_READER;
+        }
+        if (type == TandemMessageResponse.class) {
+            return RESPONSE_READER;
+        }
+        if (type == TandemMessage.class) {
+            return TANDEM_MESSAGE_READER;
+        }
+        return OBJECT_MAPPER.readerFor(type);
+    }
+
+    private static ObjectWriter writerFor(Object value) {
+        if (value == null) {
+            return OBJECT_MAPPER.writer();
+        }
+        Class<?> type = value.getClass();
+        if (type == TandemMessageRequest.class) {
+            return REQUEST_WRITER;
+        }
+        if (type == TandemMessageResponse.class) {
+            return RESPONSE_WRITER;
+        }
+        if (type == TandemMessage.class) {
+            return TANDEM_MESSAGE_WRITER;
+        }
+        return OBJECT_MAPPER.writerFor(type);
+    }
+}
@@ -0,0 +1,353 @@
+package tw.com.sc.mq;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tw.com.sc.model.MqConfig;
+import tw.com.sc.mq.metrics.MqServiceMetrics;
+
+/**
+ * 以 transacted session 批次接收交易請求（實驗性功能，壓測中吞吐量與逐筆接收相近）
+ * 每批最多接收 maxBatchSize 筆，交給 worker 並行處理，所有回應在同一個 session 上放回 MQ 後 commit 一次。
+ * 放回回應或 commit 失敗、或有訊息超過 processingTimeout 仍未完成時整批 rollback，由 MQ 重新送達。
+ * 同一個 session 無法只 rollback 部分訊息，rollback 前保留各筆的處理結果，重新送達時已完成的訊息直接放回回應並 commit，
+ * 未完成的繼續等待原本的 Tandem 呼叫；送達其他 adapter 的訊息會再呼叫一次 Tandem。
+ * 逾時 rollback 後接下來的訊息逐筆 commit，處理緩慢的訊息只 rollback 自己，不再拖累同批的其他訊息。
+ * 送達次數超過 maxDeliveries 或處理失敗的訊息在同一個交易中移到 backoutQueue，未設定時丟棄。
+ */
+class MqBatchConsumer {
+
+    interface MessageProcessor {
+        /**
+         * 處理請求並以要放回 MQ 的回應完成，不需回應時為 null
+         */
+        CompletableFuture<Object> process(Message message);
+    }
+
+    interface ReplySender {
+        /**
+         * 放回 request 的回應，correlationId 與回應對象取自 request
+         */
+        void send(MqPooledSession session, Object reply, Message request) throws JMSException;
+    }
+
+    /**
+     * rollback 的批次中各筆訊息的處理結果，依 JMSMessageID 保留到重新送達，同一個 listener 的 consumer 共用
+     */
+    static class CarriedReplies {
+        private final Map<String, CarriedReply> replies = new ConcurrentHashMap<>();
+
+        void put(String messageId, CompletableFuture<Object> reply) {
+            replies.put(messageId, new CarriedReply(reply, System.nanoTime()));
+        }
+
+        CompletableFuture<Object> take(String messageId) {
+            CarriedReply carried = replies.remove(messageId);
+            return carried == null ? null : carried.reply;
+        }
+
+        /**
+         * 移除已完成且保留超過 ttlMillis 仍未重新送達的結果（例如已送到其他 adapter）
+         */
+        void purge(long ttlMillis) {
+            if (replies.isEmpty()) {
+                return;
+            }
+            long expiredBefore = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+            replies.values().removeIf(carried -> carried.reply.isDone() && carried.carriedAt - expiredBefore < 0);
+        }
+
+        int size() {
+            return replies.size();
+        }
+    }
+
+    private static class CarriedReply {
+        private final CompletableFuture<Object> reply;
+        private final long carriedAt;
+
+        private CarriedReply(CompletableFuture<Object> reply, long carriedAt) {
+            this.reply = reply;
+            this.carriedAt = carriedAt;
+        }
+    }
+
+    private static final String DELIVERY_COUNT_PROPERTY = "JMSXDeliveryCount";
+    private static final long RECEIVE_ERROR_BACKOFF = 1000;
+    private static final long MIN_CARRY_OVER_TTL = 60000;
+
+    private final Logger logger = LoggerFactory.getLogger(MqBatchConsumer.class);
+
+    private final MqServiceMetrics mqServiceMetrics;
+    private final MessageProcessor messageProcessor;
+    private final ReplySender replySender;
+    private final CarriedReplies carriedReplies;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final long receiveTimeout;
+    private final long processingTimeout;
+    private final int maxDeliveries;
+    private final String backoutQueue;
+
+    private final MqPooledSession session;
+    private final MessageConsumer consumer;
+    private final MessageProducer backoutProducer;
+    private final Thread receiver;
+    private volatile boolean running = true;
+    /**
+     * 逾時 rollback 後還要逐筆 commit 的訊息數量，只在接收執行緒上使用
+     */
+    private int isolatedRemaining = 0;
+
+    MqBatchConsumer(String name, MqConfig.ListenerBatchConfig batchConfig, MqServiceMetrics mqServiceMetrics,
+            MqPooledSession session, Queue requestQueue, String messageSelector,
+            MessageProcessor messageProcessor, ReplySender replySender, CarriedReplies carriedReplies)
+            throws JMSException {
+        this.mqServiceMetrics = mqServiceMetrics;
+        this.messageProcessor = messageProcessor;
+        this.replySender = replySender;
+        this.carriedReplies = carriedReplies;
+        this.maxBatchSize = Math.max(1, batchConfig.getMaxBatchSize());
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, batchConfig.getLingerMillis()));
+        this.receiveTimeout = Math.max(1, batchConfig.getReceiveTimeout());
+        this.processingTimeout = batchConfig.getProcessingTimeout();
+        this.maxDeliveries = Math.max(1, batchConfig.getMaxDeliveries());
+        this.backoutQueue = batchConfig.getBackoutQueue() == null || batchConfig.getBackoutQueue().isBlank()
+                ? null
+                : batchConfig.getBackoutQueue();
+        this.session = session;
+
+        try {
+            this.consumer = session.getSession().createConsumer(requestQueue, messageSelector);
+            this.backoutProducer = backoutQueue == null
+                    ? null
+                    : session.getSession().createProducer(session.getSession().createQueue(backoutQueue));
+        } catch (JMSException e) {
+            session.close();
+            throw e;
+        }
+
+        this.receiver = new Thread(this::receiveLoop, name);
+        this.receiver.setDaemon(true);
+    }
+
+    void start() {
+        receiver.start();
+    }
+
+    /**
+     * 停止接收，最多等待 timeoutMillis 讓處理中的批次 commit，之後關閉 session（未 commit 的訊息由 MQ 撤銷）
+     */
+    void stop(long timeoutMillis) {
+        running = false;
+        if (timeoutMillis > 0 && receiver != Thread.currentThread()) {
+            try {
+                receiver.join(timeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        session.close();
+    }
+
+    private void receiveLoop() {
+        List<Message> batch = new ArrayList<>(maxBatchSize);
+        List<CompletableFuture<Object>> replies = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                Message first = consumer.receive(receiveTimeout);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                if (isolatedRemaining > 0) {
+                    isolatedRemaining--;
+                } else {
+                    collect(batch);
+                }
+                processBatch(batch, replies);
+            } catch (JMSException e) {
+                if (!running) {
+                    break;
+                }
+                if (batch.isEmpty()) {
+                    logger.error("接收交易請求時發生錯誤: {}", e.getMessage());
+                } else {
+                    carryOver(batch, replies);
+                    rollback(batch.size(), e.getMessage());
+                }
+                // 連線中斷時由 queue manager 重新連線後建立新的 consumer，這裡只避免持續重試
+                pause();
+            } catch (RuntimeException e) {
+                // 例如回應編碼失敗，整批 rollback 後繼續接收，重複失敗的訊息超過 maxDeliveries 後移到 backoutQueue
+                logger.error("批次處理交易請求時發生未預期的錯誤", e);
+                if (!batch.isEmpty()) {
+                    carryOver(batch, replies);
+                    rollback(batch.size(), e.toString());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rollback(batch.size(), "接收執行緒被中斷");
+                break;
+            } finally {
+                batch.clear();
+                replies.clear();
+            }
+        }
+    }
+
+    /**
+     * 取得佇列上已有的訊息，設定 lingerMillis 時最多等待到期限，累積到 maxBatchSize 筆即停止
+     */
+    private void collect(List<Message> batch) throws JMSException {
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            Message next = remaining > 0
+                    ? consumer.receive(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)))
+                    : consumer.receiveNoWait();
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void processBatch(List<Message> batch, List<CompletableFuture<Object>> replies)
+            throws JMSException, InterruptedException {
+        carriedReplies.purge(Math.max(MIN_CARRY_OVER_TTL, processingTimeout * (maxDeliveries + 1L)));
+        for (Message message : batch) {
+            int deliveryCount = deliveryCount(message);
+            CompletableFuture<Object> carried = carriedReplies.take(message.getJMSMessageID());
+            if (deliveryCount > maxDeliveries) {
+                replies.add(CompletableFuture.failedFuture(new IllegalStateException("送達次數 " + deliveryCount
+                        + " 超過上限 " + maxDeliveries)));
+            } else if (carried != null) {
+                // 上一次 rollback 前已開始處理，沿用原本的結果，不再呼叫 Tandem
+                replies.add(carried);
+            } else {
+                replies.add(messageProcessor.process(message));
+            }
+        }
+        if (!awaitReplies(replies)) {
+            carryOver(batch, replies);
+            rollback(batch.size(), "處理超過 " + processingTimeout + " ms");
+            // 重新送達的訊息逐筆 commit，已完成的不必等待未完成的
+            isolatedRemaining = Math.max(isolatedRemaining, batch.size());
+            return;
+        }
+
+        int backedOut = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Message message = batch.get(i);
+            CompletableFuture<Object> reply = replies.get(i);
+            if (reply.isCompletedExceptionally()) {
+                backout(message, failureReason(reply));
+                backedOut++;
+                continue;
+            }
+            Object payload = reply.join();
+            if (payload != null) {
+                replySender.send(session, payload, message);
+            }
+        }
+        session.getSession().commit();
+
+        mqServiceMetrics.recordListenerBatch(batch.size());
+        for (int i = 0; i < backedOut; i++) {
+            mqServiceMetrics.incrementPoisonMessage(backoutProducer != null);
+        }
+        logger.debug("MQ 請求批次 commit {} 筆", batch.size());
+    }
+
+    /**
+     * 等待整批處理完成，超過 processingTimeout 仍有未完成的訊息時回傳 false
+     */
+    private boolean awaitReplies(List<CompletableFuture<Object>> replies) throws InterruptedException {
+        try {
+            CompletableFuture.allOf(replies.toArray(CompletableFuture[]::new))
+                    .get(processingTimeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            // 個別訊息的錯誤在 commit 前逐筆處理
+        } catch (TimeoutException e) {
+            long unfinished = replies.stream().filter(reply -> !reply.isDone()).count();
+            logger.warn("批次中有 {} 筆交易請求處理超過 {} ms，整批 rollback 等待重新送達", unfinished, processingTimeout);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 保留已開始處理的結果，重新送達時沿用
+     */
+    private void carryOver(List<Message> batch, List<CompletableFuture<Object>> replies) {
+        for (int i = 0; i < replies.size(); i++) {
+            try {
+                carriedReplies.put(batch.get(i).getJMSMessageID(), replies.get(i));
+            } catch (JMSException e) {
+                // 取不到 messageId 的訊息重新送達時再處理一次
+            }
+        }
+    }
+
+    private void backout(Message message, String reason) throws JMSException {
+        if (backoutProducer == null) {
+            logger.error("丟棄無法處理的交易請求: messageId={}, {}", message.getJMSMessageID(), reason);
+            return;
+        }
+        backoutProducer.send(message);
+        logger.error("無法處理的交易請求移到 {}: messageId={}, {}", backoutQueue, message.getJMSMessageID(), reason);
+    }
+
+    private void rollback(int size, String reason) {
+        mqServiceMetrics.incrementListenerBatchRollback();
+        logger.error("批次處理 {} 筆交易請求失敗，整批 rollback 等待重新送達: {}", size, reason);
+        try {
+            session.getSession().rollback();
+        } catch (JMSException e) {
+            // 連線已中斷時 queue manager 會自行撤銷未 commit 的接收與回應
+        }
+    }
+
+    private static int deliveryCount(Message message) throws JMSException {
+        if (message.propertyExists(DELIVERY_COUNT_PROPERTY)) {
+            return message.getIntProperty(DELIVERY_COUNT_PROPERTY);
+        }
+        return message.getJMSRedelivered() ? 2 : 1;
+    }
+
+    private static String failureReason(CompletableFuture<Object> reply) {
+        try {
+            reply.join();
+            return "";
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            return cause.getClass().getSimpleName() + ": " + cause.getMessage();
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(RECEIVE_ERROR_BACKOFF);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
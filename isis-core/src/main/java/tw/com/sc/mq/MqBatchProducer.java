@@ -0,0 +1,277 @@
+package tw.com.sc.mq;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.JMSException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tw.com.sc.model.MqConfig;
+import tw.com.sc.model.txmsg.TandemMessageRequest;
+import tw.com.sc.mq.metrics.MqServiceMetrics;
+
+/**
+ * oneway 交易的批次發送 (group commit)
+ * 各請求執行緒把訊息放進佇列後等待，由單一發送執行緒在 transacted session 上累積送出，
+ * 每 maxBatchSize 筆或第一筆等待超過 lingerMicros 時 commit 一次，commit 完成後才通知各請求。
+ * commit 失敗時整批 rollback，換一個 session（可能是另一個 queue manager）再送一次，仍失敗則整批回傳錯誤。
+ * commit 結果在 completion 執行緒上通知，呼叫端的後續處理不會延遲下一批的發送。
+ * 呼叫端等待逾時後 cancel（或以逾時結束）的訊息在送出前略過，不會在之後的批次中被 commit。
+ */
+class MqBatchProducer {
+
+    interface NodeSelector {
+        MqQueueManagerNode select() throws JMSException;
+    }
+
+    interface MessageSender {
+        /**
+         * 在指定的 session 上送出一筆訊息並回傳 JMSMessageID
+         */
+        String send(MqPooledSession session, TandemMessageRequest message) throws JMSException;
+    }
+
+    private static final int SEND_ATTEMPTS = 2;
+
+    private final Logger logger = LoggerFactory.getLogger(MqBatchProducer.class);
+
+    private final MqServiceMetrics mqServiceMetrics;
+    private final NodeSelector nodeSelector;
+    private final MessageSender messageSender;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final long parkTimeout;
+    private final int maxPending;
+    private final BlockingQueue<PendingMessage> pending;
+    private final Thread sender;
+    private final ExecutorService completionExecutor;
+    private volatile boolean running = true;
+
+    // 以下只在發送執行緒上使用
+    private final Map<MqQueueManagerNode, MqPooledSession> sessions = new HashMap<>();
+
+    MqBatchProducer(MqConfig mqConfig, MqServiceMetrics mqServiceMetrics, NodeSelector nodeSelector,
+            MessageSender messageSender) {
+        MqConfig.OnewayBatchConfig batchConfig = mqConfig.getOnewayBatch();
+        this.mqServiceMetrics = mqServiceMetrics;
+        this.nodeSelector = nodeSelector;
+        this.messageSender = messageSender;
+        this.maxBatchSize = Math.max(1, batchConfig.getMaxBatchSize());
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, batchConfig.getLingerMicros()));
+        this.parkTimeout = mqConfig.getReconnect().getParkTimeout();
+        this.maxPending = Math.max(1, batchConfig.getMaxPending());
+        this.pending = new ArrayBlockingQueue<>(maxPending);
+        this.mqServiceMetrics.registerOnewayBatchPendingGauge(pending::size);
+
+        AtomicInteger completionThreadCount = new AtomicInteger();
+        this.completionExecutor = Executors.newFixedThreadPool(Math.max(1, batchConfig.getCompletionThreads()),
+                runnable -> {
+                    Thread thread = new Thread(runnable,
+                            "mq-batch-completion-" + completionThreadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.sender = new Thread(this::sendLoop, "mq-batch-producer");
+        this.sender.setDaemon(true);
+        this.sender.start();
+        logger.info("oneway 交易批次發送: 每批最多 {} 筆，等待 {} 微秒", maxBatchSize, batchConfig.getLingerMicros());
+    }
+
+    /**
+     * 將訊息放進佇列，commit 完成後以 JMSMessageID 完成
+     */
+    CompletableFuture<String> submit(TandemMessageRequest message) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new JMSException("MQ 批次發送已停止"));
+        }
+        PendingMessage pendingMessage = new PendingMessage(message, System.nanoTime());
+        if (!pending.offer(pendingMessage)) {
+            mqServiceMetrics.incrementOnewayBatchRejected();
+            return CompletableFuture.failedFuture(new JMSException("等待批次送出的訊息已達上限 " + maxPending));
+        }
+        return pendingMessage.future;
+    }
+
+    private void sendLoop() {
+        List<PendingMessage> batch = new ArrayList<>(maxBatchSize);
+        while (running || !pending.isEmpty()) {
+            try {
+                PendingMessage first = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collect(batch);
+                // 呼叫端已放棄等待（cancel 或逾時結束）的訊息不再送出
+                batch.removeIf(message -> message.future.isDone());
+                if (!batch.isEmpty()) {
+                    commit(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failAll(batch, new JMSException("MQ 批次發送被中斷"));
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+
+        List<PendingMessage> remaining = new ArrayList<>();
+        pending.drainTo(remaining);
+        failAll(remaining, new JMSException("MQ 批次發送已停止"));
+        for (MqQueueManagerNode node : List.copyOf(sessions.keySet())) {
+            discardSession(node);
+        }
+    }
+
+    /**
+     * 從第一筆放進佇列起算最多等待 linger，期間累積到 maxBatchSize 筆即送出
+     */
+    private void collect(List<PendingMessage> batch) throws InterruptedException {
+        long deadline = batch.get(0).enqueuedAt + lingerNanos;
+        while (batch.size() < maxBatchSize) {
+            pending.drainTo(batch, maxBatchSize - batch.size());
+            if (batch.size() >= maxBatchSize) {
+                return;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            PendingMessage next = pending.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void commit(List<PendingMessage> batch) {
+        Exception lastError = null;
+        for (int attempt = 0; attempt < SEND_ATTEMPTS; attempt++) {
+            MqQueueManagerNode node = null;
+            try {
+                node = nodeSelector.select();
+                MqPooledSession session = sessionFor(node);
+                String[] messageIds = new String[batch.size()];
+                for (int i = 0; i < batch.size(); i++) {
+                    messageIds[i] = messageSender.send(session, batch.get(i).message);
+                }
+                session.getSession().commit();
+
+                mqServiceMetrics.recordOnewayBatch(batch.size(), System.nanoTime() - batch.get(0).enqueuedAt);
+                logger.debug("MQ 批次 commit {} 筆", batch.size());
+                List<PendingMessage> committed = List.copyOf(batch);
+                complete(() -> {
+                    for (int i = 0; i < committed.size(); i++) {
+                        committed.get(i).future.complete(messageIds[i]);
+                    }
+                });
+                return;
+            } catch (JMSException | RuntimeException e) {
+                lastError = e;
+                if (node != null) {
+                    discardSession(node);
+                }
+                logger.warn("MQ 批次送出失敗 ({} 筆，第 {} 次): {}", batch.size(), attempt + 1, e.getMessage());
+            }
+        }
+
+        JMSException error = lastError instanceof JMSException jmsException
+                ? jmsException
+                : new JMSException("MQ 批次送出失敗: " + lastError.getMessage());
+        failAll(batch, error);
+    }
+
+    private MqPooledSession sessionFor(MqQueueManagerNode node) throws JMSException {
+        MqPooledSession session = sessions.get(node);
+        if (session == null) {
+            session = node.createTransactedSession(parkTimeout);
+            sessions.put(node, session);
+        }
+        return session;
+    }
+
+    /**
+     * rollback 並關閉 session，下一批重新建立（重新連線後舊的 session 已無法使用）
+     */
+    private void discardSession(MqQueueManagerNode node) {
+        MqPooledSession session = sessions.remove(node);
+        if (session == null) {
+            return;
+        }
+        try {
+            session.getSession().rollback();
+        } catch (JMSException e) {
+            // 連線已中斷時 queue manager 會自行撤銷未 commit 的訊息
+        }
+        session.close();
+    }
+
+    private void failAll(List<PendingMessage> messages, JMSException error) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        List<PendingMessage> failed = List.copyOf(messages);
+        complete(() -> {
+            for (PendingMessage message : failed) {
+                message.future.completeExceptionally(error);
+            }
+        });
+    }
+
+    /**
+     * 在 completion 執行緒上通知呼叫端，已停止時在目前的執行緒上通知
+     */
+    private void complete(Runnable notification) {
+        try {
+            completionExecutor.execute(notification);
+        } catch (RejectedExecutionException e) {
+            notification.run();
+        }
+    }
+
+    /**
+     * 停止接收新的訊息，等待佇列中的訊息送出
+     */
+    void close() {
+        running = false;
+        try {
+            sender.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (sender.isAlive()) {
+            logger.warn("等待 MQ 批次發送結束逾時，尚有 {} 筆未送出", pending.size());
+        }
+        completionExecutor.shutdown();
+        try {
+            completionExecutor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class PendingMessage {
+        private final TandemMessageRequest message;
+        private final long enqueuedAt;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+
+        private PendingMessage(TandemMessageRequest message, long enqueuedAt) {
+            this.message = message;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
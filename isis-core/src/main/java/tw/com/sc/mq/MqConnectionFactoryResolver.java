@@ -0,0 +1,16 @@
+package tw.com.sc.mq;
+
+import javax.jms.ConnectionFactory;
+
+import tw.com.sc.model.MqConfig;
+
+/**
+ * 依 queue manager 設定建立 ConnectionFactory
+ * 設定多個 mq.queueManagers 時，MqConnectionManager 以此為每個 queue manager 建立各自的連線；
+ * IBM MQ 由 MqConfig 提供，其他 JMS broker 需自行提供實作。
+ */
+@FunctionalInterface
+public interface MqConnectionFactoryResolver {
+
+    ConnectionFactory create(MqConfig.QueueManagerConfig queueManager);
+}
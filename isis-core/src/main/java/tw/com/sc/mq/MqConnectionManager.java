@@ -1,30 +1,41 @@
 package tw.com.sc.mq;
 
-import java.util.Collections;
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import javax.jms.BytesMessage;
-import javax.jms.Connection;
-import javax.jms.DeliveryMode;
+import javax.jms.ConnectionFactory;
 import javax.jms.JMSException;
 import javax.jms.Message;
-import javax.jms.MessageConsumer;
-import javax.jms.MessageProducer;
-import javax.jms.Queue;
-import javax.jms.Session;
-import javax.jms.TextMessage;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import com.ibm.mq.jms.MQConnectionFactory;
 
 import tw.com.sc.model.MqConfig;
+import tw.com.sc.model.txmsg.TandemMessage;
+import tw.com.sc.model.txmsg.TandemMessageRequest;
+import tw.com.sc.model.txmsg.TandemMessageResponse;
 import tw.com.sc.mq.metrics.MqServiceMetrics;
 
 @Component
@@ -34,217 +45,344 @@ public class MqConnectionManager implements DisposableBean {
     private final Logger logger = LoggerFactory.getLogger(MqConnectionManager.class);
     private final MqServiceMetrics mqServiceMetrics;
 
-    private Connection connection;
-    private Session session;
-    private Session heartbeatSession;
-    private MessageProducer requestProducer;
-    private MessageProducer responseProducer;
-    private Queue requestQueue;
-    private Queue responseQueue;
-    private volatile boolean isListening = false;
-    private Thread listenerThread;
-    private boolean isMqConnected = false;
-    private final AtomicBoolean isReconnecting = new AtomicBoolean(false);
+    /**
+     * 連線中的 queue manager，未設定 mq.queueManagers 時只有一個
+     */
+    private final List<MqQueueManagerNode> nodes;
+    private final MqBatchProducer batchProducer;
+    private final AtomicInteger nextNode = new AtomicInteger();
+    /**
+     * 監聽到的交易請求來自哪個 queue manager，回應需放回同一個 queue manager 才會被送出請求的一方收到
+     */
+    private final Map<String, RequestOrigin> requestOrigins = new ConcurrentHashMap<>();
+    private volatile MqListenerContainer listenerContainer;
+    private volatile boolean closed = false;
 
-    private final MQConnectionFactory connectionFactory;
+    private final MqPayloadCodec payloadCodec;
+    private final QueueDepthProvider queueDepthProvider;
+    /**
+     * 查詢佇列深度可能因 queue manager 無回應而阻塞，不佔用 Spring 排程執行緒，避免延誤心跳與回應清理
+     */
+    private final ExecutorService queueDepthExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mq-queue-depth");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean queueDepthInProgress = new AtomicBoolean(false);
+    /**
+     * 非同步交易收到回應或逾時後的處理（解碼、稽核、快取、釋放名額）都在此執行，
+     * 不佔用回應 consumer 與 CompletableFuture 逾時的執行緒
+     */
+    private final ExecutorService responseExecutor;
 
     private static final String TRANSACTION_CORRELATION_ID = "TX";
+    private static final String HEARTBEAT_CORRELATION_PREFIX = "HB";
 
-    private final Object connectionLock = new Object();
-    private volatile boolean needReconnect = false;
+    private static final String PROCESSING_SUCCESS = "success";
+    private static final String PROCESSING_TIMEOUT = "timeout";
+    private static final String PROCESSING_ERROR = "error";
+
+    /**
+     * 同一個 health queue 可能由多個 gateway / adapter 共用，心跳的 correlationId 加上各自的識別碼，只收回自己送出的訊息
+     */
+    private final String heartbeatPrefix = HEARTBEAT_CORRELATION_PREFIX
+            + Long.toHexString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE) + "-";
+    /**
+     * 雙向交易的回應只由送出請求的 gateway 接收，adapter 放回回應時帶回此識別碼
+     */
+    private final String replyNode = Long.toHexString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE);
 
     public MqConnectionManager(MqConfig mqConfig, MqServiceMetrics mqServiceMetrics,
-            MQConnectionFactory connectionFactory) {
+            ConnectionFactory connectionFactory, ObjectProvider<QueueDepthProvider> queueDepthProvider,
+            ObjectProvider<MqConnectionFactoryResolver> connectionFactoryResolver) {
         this.mqConfig = mqConfig;
         this.mqServiceMetrics = mqServiceMetrics;
-        this.connectionFactory = connectionFactory;
+        this.queueDepthProvider = queueDepthProvider.getIfAvailable();
+        if (this.queueDepthProvider == null) {
+            logger.info("未提供 QueueDepthProvider，不記錄佇列深度");
+        }
+        this.payloadCodec = new MqPayloadCodec(mqConfig);
+        if (mqConfig.getHeartbeat().getMode() == MqConfig.HeartbeatMode.HEALTH_QUEUE
+                && (mqConfig.getHeartbeat().getQueue() == null || mqConfig.getHeartbeat().getQueue().isBlank())) {
+            throw new IllegalStateException("mq.heartbeat.mode=health-queue 時必須設定 mq.heartbeat.queue");
+        }
+        this.nodes = createNodes(connectionFactory, connectionFactoryResolver.getIfAvailable());
+        int responseThreads = Math.max(1, mqConfig.getResponseThreads());
+        AtomicInteger responseThreadCount = new AtomicInteger();
+        this.responseExecutor = new ThreadPoolExecutor(responseThreads, responseThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, mqConfig.getResponseQueueCapacity())), runnable -> {
+                    Thread thread = new Thread(runnable, "mq-response-" + responseThreadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        for (MqQueueManagerNode node : nodes) {
+            mqServiceMetrics.registerMqProcessingTimers(node.getName(),
+                    PROCESSING_SUCCESS, PROCESSING_TIMEOUT, PROCESSING_ERROR);
+        }
+        this.mqServiceMetrics.registerSessionPoolGauges(
+                () -> nodes.stream().mapToInt(MqQueueManagerNode::getActiveCount).sum(),
+                () -> nodes.stream().mapToInt(MqQueueManagerNode::getIdleCount).sum(),
+                () -> nodes.stream().mapToInt(MqQueueManagerNode::getConnectionCount).sum());
+        this.mqServiceMetrics.registerListenerGauge(
+                () -> listenerContainer == null ? 0 : listenerContainer.getInFlightCount());
 
         try {
+            configureSsl();
             initMqConnection();
         } catch (Exception e) {
             logger.error("初始化 MQ 連線時發生錯誤: {}", e.getMessage());
             logger.error("詳細錯誤:", e);
             throw new RuntimeException("MQ 連線初始化失�", e);
         }
+
+        // 連線建立後才啟動批次發送執行緒
+        this.batchProducer = mqConfig.getOnewayBatch().isEnabled()
+                ? new MqBatchProducer(mqConfig, mqServiceMetrics, this::selectNode, this::sendOnewayMessage)
+                : null;
     }
 
-    private void initMqConnection() {
-        int maxRetries = 3;
-        int retryCount = 0;
+    /**
+     * 未設定 mq.queueManagers 時沿用注入的 ConnectionFactory；設定多個時由 MqConnectionFactoryResolver 各自建立
+     */
+    private List<MqQueueManagerNode> createNodes(ConnectionFactory connectionFactory,
+            MqConnectionFactoryResolver connectionFactoryResolver) {
+        List<MqConfig.QueueManagerConfig> queueManagers = mqConfig.resolveQueueManagers();
+        if (mqConfig.getQueueManagers() == null || mqConfig.getQueueManagers().isEmpty()) {
+            return List.of(new MqQueueManagerNode(queueManagers.get(0).getName(), connectionFactory, mqConfig,
+                    mqServiceMetrics, heartbeatPrefix, replyNode));
+        }
+        if (connectionFactoryResolver == null) {
+            throw new IllegalStateException("設定 mq.queueManagers 時需要提供 MqConnectionFactoryResolver");
+        }
 
-        while (retryCount < maxRetries) {
-            try {
-                logger.info("嘗試建立MQ連線 (第{}次)...", retryCount + 1);
+        List<MqQueueManagerNode> queueManagerNodes = new ArrayList<>();
+        for (MqConfig.QueueManagerConfig queueManager : queueManagers) {
+            queueManagerNodes.add(new MqQueueManagerNode(queueManager.getName(),
+                    connectionFactoryResolver.create(queueManager), mqConfig, mqServiceMetrics, heartbeatPrefix,
+                    replyNode));
+        }
+        logger.info("連線 {} 個 queue manager，分配方式: {}", queueManagerNodes.size(), mqConfig.getLoadBalancing());
+        return List.copyOf(queueManagerNodes);
+    }
 
-                if (mqConfig.getSsl() != null) {
-                    if (mqConfig.getSsl().getKeyStore() != null && 
-                        mqConfig.getSsl().getKeyStorePassword() != null) {
-                        System.setProperty("javax.net.ssl.keyStore", mqConfig.getSsl().getKeyStore());
-                        System.setProperty("javax.net.ssl.keyStorePassword", mqConfig.getSsl().getKeyStorePassword());
-                    }
-                    
-                    if (mqConfig.getSsl().getTrustStore() != null && 
-                        mqConfig.getSsl().getTrustStorePassword() != null) {
-                        System.setProperty("javax.net.ssl.trustStore", mqConfig.getSsl().getTrustStore());
-                        System.setProperty("javax.net.ssl.trustStorePassword", mqConfig.getSsl().getTrustStorePassword());
-                    }
-                    
-                    if (mqConfig.getSsl().getCipherSuite() != null) {
-                        connectionFactory.setSSLCipherSuite(mqConfig.getSsl().getCipherSuite());
+    private void configureSsl() {
+        if (mqConfig.getSsl() != null) {
+            if (mqConfig.getSsl().getKeyStore() != null && 
+                mqConfig.getSsl().getKeyStorePassword() != null) {
+                System.setProperty("javax.net.ssl.keyStore", mqConfig.getSsl().getKeyStore());
+                System.setProperty("javax.net.ssl.keyStorePassword", mqConfig.getSsl().getKeyStorePassword());
+            }
+            
+            if (mqConfig.getSsl().getTrustStore() != null && 
+                mqConfig.getSsl().getTrustStorePassword() != null) {
+                System.setProperty("javax.net.ssl.trustStore", mqConfig.getSsl().getTrustStore());
+                System.setProperty("javax.net.ssl.trustStorePassword", mqConfig.getSsl().getTrustStorePassword());
+            }
+            
+            if (mqConfig.getSsl().getCipherSuite() != null) {
+                for (MqQueueManagerNode node : nodes) {
+                    if (node.getConnectionFactory() instanceof MQConnectionFactory mqConnectionFactory) {
+                        mqConnectionFactory.setSSLCipherSuite(mqConfig.getSsl().getCipherSuite());
                     }
                 }
+            }
+        }
+    }
 
-                connection = connectionFactory.createConnection();
-                session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-                heartbeatSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-                requestQueue = session.createQueue(mqConfig.getQueue().getRequest());
-                responseQueue = session.createQueue(mqConfig.getQueue().getResponse());
-                requestProducer = session.createProducer(requestQueue);
-                requestProducer.setTimeToLive(mqConfig.getConnectionTimeout());
-                requestProducer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
-
-                responseProducer = session.createProducer(responseQueue);
-                responseProducer.setTimeToLive(mqConfig.getConnectionTimeout());
-                responseProducer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
-
-                connection.start();
-                logger.info("MQ連線建立成功");
-                isMqConnected = true;
-                return;
+    /**
+     * 啟動時建立各 queue manager 的連線；只要有一個成功即可啟動，其餘在背景重新連線，全部失敗則啟動失敗
+     */
+    private void initMqConnection() {
+        List<MqQueueManagerNode> failedNodes = new ArrayList<>();
+        MqTransactionManagerException lastError = null;
+        for (MqQueueManagerNode node : nodes) {
+            try {
+                node.start();
+            } catch (MqTransactionManagerException e) {
+                failedNodes.add(node);
+                lastError = e;
+            }
+        }
 
-            } catch (Exception e) {
-                retryCount++;
-                if (retryCount == maxRetries) {
-                    logger.error("MQ連線建立失敗，已重試{}次: {}", maxRetries, e.getMessage());
-                    throw new MqTransactionManagerException("MQ連線建立失敗", e);
-                }
+        if (failedNodes.size() == nodes.size()) {
+            throw lastError;
+        }
+        for (MqQueueManagerNode node : failedNodes) {
+            node.requestReconnect("啟動時無法連線");
+        }
+    }
+
+    @Scheduled(fixedRateString = "${mq.queueDepth.interval:30000}")
+    private void recordQueueSize() {
+        if (queueDepthProvider == null || !mqConfig.getQueueDepth().isEnabled()) {
+            return;
+        }
+        // 上一次查詢尚未完成時略過
+        if (!queueDepthInProgress.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            queueDepthExecutor.execute(() -> {
                 try {
-                    Thread.sleep(3000);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    throw new MqTransactionManagerException("MQ連線重試被中斷", ie);
+                    pollQueueSize();
+                } finally {
+                    queueDepthInProgress.set(false);
                 }
-            }
+            });
+        } catch (RejectedExecutionException e) {
+            queueDepthInProgress.set(false);
         }
     }
 
-    @Scheduled(fixedRateString = "30000")
-    private void recordQueueSize() {
+    private void pollQueueSize() {
+        String requestQueueName = mqConfig.getQueue().getRequest();
+        String responseQueueName = mqConfig.getQueue().getResponse();
         try {
-            // 分別檢查請求和回應佇列
-            recordSingleQueueSize(requestQueue, mqConfig.getQueue().getRequest());
-            recordSingleQueueSize(responseQueue, mqConfig.getQueue().getResponse());
+            // 分別檢查請求和回應佇列，兩者為同一個佇列時只查詢一次
+            int requestQueueSize = queueDepthProvider.getDepth(requestQueueName);
+            mqServiceMetrics.recordRequestQueueSize(requestQueueSize);
+            int responseQueueSize = responseQueueName.equals(requestQueueName)
+                    ? requestQueueSize
+                    : queueDepthProvider.getDepth(responseQueueName);
+            mqServiceMetrics.recordResponseQueueSize(responseQueueSize);
+            logger.debug("佇列 {} 目前大小: {}，佇列 {} 目前大小: {}", requestQueueName, requestQueueSize,
+                    responseQueueName, responseQueueSize);
+        } catch (JMSException e) {
+            logger.warn("無法取得佇列大小: {}", e.getMessage());
         } catch (Exception e) {
             logger.warn("檢查佇列大小時發生錯誤: {}", e.getMessage());
         }
     }
 
-    private void recordSingleQueueSize(Queue queue, String queueName) {
-        try {
-            // MessageConsumer tempConsumer = session.createConsumer(queue);
-            javax.jms.QueueBrowser browser = session.createBrowser(queue);
-            int queueSize = Collections.list((Enumeration<?>) browser.getEnumeration()).size();
-            if (queueName.equals(mqConfig.getQueue().getRequest())) {
-                mqServiceMetrics.recordRequestQueueSize(queueSize);
-            }
-            if (queueName.equals(mqConfig.getQueue().getResponse())) {
-                mqServiceMetrics.recordResponseQueueSize(queueSize);
-            }
-            logger.debug("佇列 {} 目前大小: {}", queueName, queueSize);
-            browser.close();
-            // tempConsumer.close();
-        } catch (JMSException e) {
-            logger.warn("無法取得佇列 {} 大小: {}", queueName, e.getMessage());
+    @Scheduled(fixedRateString = "${mq.replySweepInterval:1000}")
+    private void sweepExpiredReplies() {
+        for (MqQueueManagerNode node : nodes) {
+            node.sweepExpiredReplies();
+        }
+
+        // 沒有放回回應的請求（例如被過濾的交易）超過交易有效時間後不再記錄來源
+        if (!requestOrigins.isEmpty()) {
+            long expiredBefore = System.currentTimeMillis() - mqConfig.getTransactionExpiry();
+            requestOrigins.values().removeIf(origin -> origin.receivedAt <= expiredBefore);
         }
     }
 
     @Scheduled(fixedRateString = "${mq.heartbeatInterval}")
     private void heartbeat() {
-        // 檢查當前連線狀態
-        if (heartbeatSession == null || connection == null) {
-            isMqConnected = false;
-            handleReconnection();
-            return;
+        // 各 queue manager 在自己的執行緒上檢查，任一成功即更新心跳時間
+        for (MqQueueManagerNode node : nodes) {
+            node.heartbeatAsync(mqServiceMetrics::recordHeartbeatReceivedTimestamp);
+        }
+    }
+
+    /**
+     * 送出 oneway 交易；啟用 mq.onewayBatch 時等待所屬的批次 commit 後才回傳
+     */
+    public String sendTxMessageAsynchronous(TandemMessageRequest message) throws JMSException {
+        if (batchProducer != null) {
+            return awaitBatchCommit(batchProducer.submit(message));
         }
 
-        MessageConsumer consumer = null;
-        try {
-            // 先嘗試建立 consumer 來測試連線
+        try (MqPooledSession pooledSession = selectNode().borrow(0)) {
             try {
-                String correlationId = "HB" + System.currentTimeMillis();
-                javax.jms.Message message = heartbeatSession.createTextMessage("HEARTBEAT");
-                message.setJMSCorrelationID(correlationId);
-                message.setJMSExpiration(mqConfig.getHeartbeatInterval());
-
-                long sendTimeout = mqConfig.getHeartbeatInterval();
-                requestProducer.setTimeToLive(sendTimeout);
-                requestProducer.send(message,
-                        javax.jms.DeliveryMode.NON_PERSISTENT,
-                        javax.jms.Message.DEFAULT_PRIORITY,
-                        sendTimeout);
-
-                logger.debug("MQ發送心跳檢查訊息成功: correlationId={}", correlationId);
-
-                consumer = heartbeatSession.createConsumer(
-                        responseQueue,
-                        "JMSCorrelationID='" + correlationId + "'");
-
-                long timeout = mqConfig.getHeartbeatInterval();
-                javax.jms.Message response = consumer.receive(timeout);
-
-                if (response != null) {
-                    isMqConnected = true;
-                    mqServiceMetrics.recordHeartbeatReceivedTimestamp();
-                    logger.debug("MQ心跳檢查成功，correlationId: {}", correlationId);
-                } else {
-                    throw new JMSException("心跳檢查超時");
-                }
-
+                return sendOnewayMessage(pooledSession, message);
             } catch (JMSException e) {
-                isMqConnected = false;
-                mqServiceMetrics.incrementHeartbeatFailed();
-                logger.warn("MQ心跳檢查失敗: {}", e.getMessage());
-                handleReconnection();
-            }
-
-        } finally {
-            if (consumer != null) {
-                try {
-                    consumer.close();
-                } catch (JMSException e) {
-                    logger.warn("關閉 consumer 時發生錯誤", e);
-                }
+                pooledSession.markBroken();
+                throw e;
             }
         }
     }
 
-    public String sendTxMessageAsynchronous(String message) throws JMSException {
+    /**
+     * 非阻塞送出 oneway 交易，啟用 mq.onewayBatch 時於批次 commit 後完成，否則直接送出
+     */
+    public CompletableFuture<String> submitTxMessageAsynchronous(TandemMessageRequest message) {
+        if (batchProducer != null) {
+            CompletableFuture<String> committed = batchProducer.submit(message);
+            return committed
+                    .orTimeout(mqConfig.getResponseWaitInterval(), TimeUnit.MILLISECONDS)
+                    .handleAsync((messageId, error) -> {
+                        if (error == null) {
+                            return messageId;
+                        }
+                        Throwable failure = error instanceof CompletionException ? error.getCause() : error;
+                        if (failure instanceof TimeoutException) {
+                            // orTimeout 已以逾時結束 committed，尚未送出的訊息在送出前略過，不會在呼叫端收到逾時後被 commit
+                            throw new CompletionException(new JMSException("等待 MQ 批次 commit 逾時"));
+                        }
+                        if (failure instanceof JMSException) {
+                            throw new CompletionException(failure);
+                        }
+                        JMSException jmsException = new JMSException("MQ 批次送出失敗: " + failure.getMessage());
+                        jmsException.setLinkedException(failure instanceof Exception cause ? cause : null);
+                        throw new CompletionException(jmsException);
+                    }, this::executeResponse);
+        }
+        try {
+            return CompletableFuture.completedFuture(sendTxMessageAsynchronous(message));
+        } catch (JMSException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 
+    private String sendOnewayMessage(MqPooledSession pooledSession, TandemMessageRequest message)
+            throws JMSException {
         mqServiceMetrics.incrementMqMessagesSent();
 
-        javax.jms.TextMessage mqMessage = session.createTextMessage();
-        mqMessage.setText(message);
+        Message mqMessage = payloadCodec.encode(pooledSession, message);
         mqMessage.setJMSCorrelationID(TRANSACTION_CORRELATION_ID);
         mqMessage.setJMSExpiration(System.currentTimeMillis() + mqConfig.getTransactionExpiry());
 
-        responseProducer.send(mqMessage);
+        pooledSession.getResponseProducer().send(mqMessage);
         logger.debug("MQ 發送訊息成功: correlationId={}", mqMessage.getJMSCorrelationID());
 
         return mqMessage.getJMSMessageID();
     }
 
-    public void putResponse(String message, String correlationId) {
+    private String awaitBatchCommit(CompletableFuture<String> committed) throws JMSException {
         try {
-            mqServiceMetrics.incrementMqMessagesSent();
+            return committed.get(mqConfig.getResponseWaitInterval(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // 尚未送出的訊息在送出前略過，避免呼叫端收到逾時後訊息仍被 commit
+            committed.cancel(false);
+            throw new JMSException("等待 MQ 批次 commit 逾時");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            committed.cancel(false);
+            throw new JMSException("等待 MQ 批次 commit 時被中斷");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof JMSException jmsException) {
+                throw jmsException;
+            }
+            JMSException jmsException = new JMSException("MQ 批次送出失敗: " + e.getCause().getMessage());
+            jmsException.setLinkedException(e.getCause() instanceof Exception cause ? cause : null);
+            throw jmsException;
+        }
+    }
 
-            javax.jms.TextMessage mqMessage = session.createTextMessage();
-            mqMessage.setText(message);
-            mqMessage.setJMSCorrelationID(correlationId);
-            // 設置訊息過期的時間
-            mqMessage.setJMSExpiration(System.currentTimeMillis() + mqConfig.getTransactionExpiry());
+    /**
+     * 將 Tandem 的回應放回 MQ
+     */
+    public void putResponse(TandemMessage message, String correlationId) {
+        sendResponse(message, correlationId);
+    }
+
+    /**
+     * 將錯誤回應放回 MQ
+     */
+    public void putResponse(TandemMessageResponse message, String correlationId) {
+        sendResponse(message, correlationId);
+    }
 
-            responseProducer.send(mqMessage);
-            logger.info("MQ 發送訊息成功: correlationId={}", mqMessage.getJMSCorrelationID());
+    private void sendResponse(Object message, String correlationId) {
+        RequestOrigin origin = correlationId == null ? null : requestOrigins.remove(correlationId);
+        try (MqPooledSession pooledSession = borrowResponseSession(origin)) {
+            try {
+                sendReply(pooledSession, message, correlationId, origin == null ? null : origin.replyNode);
+            } catch (JMSException e) {
+                pooledSession.markBroken();
+                throw e;
+            }
 
         } catch (JMSException e) {
             logger.error("發送Tandem回應訊息時發生錯誤: {}", e.getMessage());
@@ -253,195 +391,329 @@ public class MqConnectionManager implements DisposableBean {
         }
     }
 
-    public String sendTxMessageAndWaitForResponse(String txRequest) throws JMSException, SyncTxTimeoutException {
+    /**
+     * 批次接收時在接收請求的 transacted session 上放回回應，commit 後才會送出
+     */
+    private void sendBatchReply(MqPooledSession pooledSession, Object message, Message request) throws JMSException {
+        sendReply(pooledSession, message, request.getJMSMessageID(),
+                request.getStringProperty(MqReplyDispatcher.REPLY_NODE_PROPERTY));
+    }
+
+    /**
+     * 在指定的 session 上放回回應，replyNode 為請求上送出請求的 gateway 識別碼
+     */
+    private void sendReply(MqPooledSession pooledSession, Object message, String correlationId, String replyNode)
+            throws JMSException {
         mqServiceMetrics.incrementMqMessagesSent();
 
-        // 建立並發送請求訊息
-        javax.jms.TextMessage requestMsg = session.createTextMessage();
-        requestMsg.setText(txRequest);
-        requestMsg.setJMSCorrelationID(TRANSACTION_CORRELATION_ID);
-        requestMsg.setStringProperty("JMS_IBM_Character_Set", String.valueOf(mqConfig.getCcsid()));
-        requestMsg.setJMSExpiration(System.currentTimeMillis() + mqConfig.getResponseWaitInterval());
+        Message mqMessage = payloadCodec.encode(pooledSession, message);
+        mqMessage.setJMSCorrelationID(correlationId);
+        if (replyNode != null) {
+            mqMessage.setStringProperty(MqReplyDispatcher.REPLY_NODE_PROPERTY, replyNode);
+        }
+        // 設置訊息過期的時間
+        mqMessage.setJMSExpiration(System.currentTimeMillis() + mqConfig.getTransactionExpiry());
 
-        requestProducer.send(requestMsg);
-        logger.info("MQ發送訊息成功: messageId={}", requestMsg.getJMSMessageID());
+        pooledSession.getResponseProducer().send(mqMessage);
+        logger.info("MQ 發送訊息成功: correlationId={}", mqMessage.getJMSCorrelationID());
+    }
 
-        // 建立消費者等待回應
-        MessageConsumer consumer = null;
+    public TandemMessageResponse sendTxMessageAndWaitForResponse(TandemMessageRequest txRequest)
+            throws JMSException, SyncTxTimeoutException {
+        MqQueueManagerNode node = selectNode();
+        long sentAt = System.nanoTime();
+        String messageId = sendTwoWayRequest(node, txRequest);
+        MqReplyDispatcher replyDispatcher = node.getReplyDispatcher();
+
+        // 由共用的回應 consumer 依 correlationId 交付回應
+        CompletableFuture<Message> pendingReply = replyDispatcher.register(messageId,
+                mqConfig.getResponseWaitInterval());
+
+        Message responseMsg;
+        String result = PROCESSING_ERROR;
         try {
-            consumer = session.createConsumer(
-                    responseQueue,
-                    "JMSCorrelationID='" + requestMsg.getJMSMessageID() + "'");
-
-            // 接收回應
-            Message responseMsg = consumer.receive(mqConfig.getResponseWaitInterval());
-
-            if (responseMsg == null) {
-                mqServiceMetrics.incrementMqTimeouts();
-                String errorMsg = "MQ 接收訊息超時";
-                logger.error("{} - 訊息ID: {}, 等待時間: {} ms", 
-                    errorMsg, 
-                    requestMsg.getJMSMessageID(), 
-                    mqConfig.getResponseWaitInterval()
-                );
-                throw new SyncTxTimeoutException(
-                    errorMsg,
-                    requestMsg.getJMSMessageID(),
-                    mqConfig.getResponseWaitInterval()
-                );
+            responseMsg = pendingReply.get(mqConfig.getResponseWaitInterval(), TimeUnit.MILLISECONDS);
+            result = PROCESSING_SUCCESS;
+        } catch (TimeoutException e) {
+            result = PROCESSING_TIMEOUT;
+            replyDispatcher.cancel(messageId);
+            throw syncTxTimeout(messageId);
+        } catch (InterruptedException e) {
+            replyDispatcher.cancel(messageId);
+            Thread.currentThread().interrupt();
+            throw new JMSException("等待 MQ 回應時被中斷");
+        } catch (ExecutionException e) {
+            replyDispatcher.cancel(messageId);
+            if (e.getCause() instanceof TimeoutException) {
+                result = PROCESSING_TIMEOUT;
+                throw syncTxTimeout(messageId);
             }
-
-            String responseText;
-            if (responseMsg instanceof TextMessage textMessage) {
-                responseText = textMessage.getText();
-            } else if (responseMsg instanceof BytesMessage bytesMessage) {
-                byte[] bytes = new byte[(int) bytesMessage.getBodyLength()];
-                bytesMessage.readBytes(bytes);
-                responseText = new String(bytes);
-            } else {
-                logger.error("不支援的訊息類型: {}", responseMsg.getClass().getName());
-                throw new RuntimeException("不支援的訊息類型");
+            if (e.getCause() instanceof JMSException jmsException) {
+                throw jmsException;
             }
-
-            logger.info("MQ接收訊息成功: correlationId={}", responseMsg.getJMSCorrelationID());
-
-            return responseText;
-
-        } finally {
-            if (consumer != null) {
-                try {
-                    consumer.close();
-                } catch (JMSException e) {
-                    logger.warn("關閉 consumer 時發生錯誤", e);
-                }
+            JMSException jmsException = new JMSException("等待 MQ 回應時發生錯誤: " + e.getCause().getMessage());
+            if (e.getCause() instanceof Exception cause) {
+                jmsException.setLinkedException(cause);
             }
+            throw jmsException;
+        } finally {
+            mqServiceMetrics.recordMqProcessingTime(node.getName(), result, System.nanoTime() - sentAt);
         }
-    }
 
-    // TODO 改成非同步的寫法會比較好
-    public void startListeningTxMessage(MessageHandler messageHandler) {
-        if (isListening) {
-            logger.warn("監聽器已在運行中");
-            return;
-        }
+        TandemMessageResponse response = payloadCodec.decode(responseMsg, TandemMessageResponse.class);
+        logger.info("MQ接收訊息成功: correlationId={}", responseMsg.getJMSCorrelationID());
 
-        isListening = true;
-        listenerThread = new Thread(() -> {
-            while (isListening) {
-                try {
-                    MessageConsumer consumer = null;
-                    try {
-                        consumer = session.createConsumer(
-                                requestQueue,
-                                "JMSCorrelationID='" + TRANSACTION_CORRELATION_ID + "'");
-
-                        // 使用 receiveNoWait 或設定較短的超時時間
-                        javax.jms.Message message = consumer.receive(1000); // 設定1秒超時
-                        if (message != null) {
-                            messageHandler.onRequestMessage(message);
-                        }
+        return response;
+    }
 
-                    } finally {
-                        if (consumer != null) {
-                            try {
-                                consumer.close();
-                            } catch (JMSException e) {
-                                logger.warn("關閉 consumer 時發生錯誤", e);
-                            }
+    /**
+     * 非同步的雙向交易，呼叫端不需等待回應
+     * 回應到達時以回應內容完成；等待超過 responseWaitInterval 時以 SyncTxTimeoutException 結束，
+     * MQ 錯誤則以 JMSException 結束。
+     */
+    public CompletableFuture<TandemMessageResponse> sendTxMessageAsync(TandemMessageRequest txRequest) {
+        MqQueueManagerNode node;
+        long sentAt;
+        String messageId;
+        try {
+            node = selectNode();
+            sentAt = System.nanoTime();
+            messageId = sendTwoWayRequest(node, txRequest);
+        } catch (JMSException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        MqReplyDispatcher replyDispatcher = node.getReplyDispatcher();
+
+        return replyDispatcher.register(messageId, mqConfig.getResponseWaitInterval())
+                .orTimeout(mqConfig.getResponseWaitInterval(), TimeUnit.MILLISECONDS)
+                .handleAsync((responseMsg, error) -> {
+                    Throwable failure = error instanceof CompletionException ? error.getCause() : error;
+                    mqServiceMetrics.recordMqProcessingTime(node.getName(),
+                            failure == null ? PROCESSING_SUCCESS
+                                    : failure instanceof TimeoutException ? PROCESSING_TIMEOUT : PROCESSING_ERROR,
+                            System.nanoTime() - sentAt);
+                    if (error == null) {
+                        try {
+                            TandemMessageResponse response = payloadCodec.decode(responseMsg,
+                                    TandemMessageResponse.class);
+                            logger.info("MQ接收訊息成功: correlationId={}", responseMsg.getJMSCorrelationID());
+                            return response;
+                        } catch (JMSException e) {
+                            throw new CompletionException(e);
                         }
                     }
 
-                    // 加入短暫休眠，避免過度消耗CPU
-                    Thread.sleep(100);
-
-                } catch (Exception e) {
-                    logger.error("監聽佇列時發生錯誤: {}", e.getMessage());
-                    try {
-                        Thread.sleep(3000);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        break;
+                    replyDispatcher.cancel(messageId);
+                    if (failure instanceof TimeoutException) {
+                        throw new CompletionException(syncTxTimeout(messageId));
                     }
-                }
-            }
-        });
-
-        listenerThread.start();
-        logger.info("已開始監聽佇列");
+                    throw new CompletionException(failure);
+                }, this::executeResponse);
     }
 
-    public void stopListening() {
-        if (!isListening) {
-            return;
+    /**
+     * 回應執行緒的佇列已滿或已停止時，在目前的執行緒上處理，確保呼叫端一定會收到結果
+     */
+    private void executeResponse(Runnable command) {
+        try {
+            responseExecutor.execute(command);
+        } catch (RejectedExecutionException e) {
+            command.run();
         }
+    }
 
-        logger.info("正在停止 MQ 監聽...");
-        isListening = false;
+    /**
+     * 發送雙向交易請求並回傳 messageId，回應的 correlationId 即為此 messageId
+     */
+    private String sendTwoWayRequest(MqQueueManagerNode node, TandemMessageRequest txRequest) throws JMSException {
+        mqServiceMetrics.incrementMqMessagesSent();
+        node.ensureReplyDispatcherStarted();
 
-        if (listenerThread != null) {
-            listenerThread.interrupt();
+        // 建立並發送請求訊息，送出後即歸還 session，等待回應時不佔用 session
+        String messageId;
+        try (MqPooledSession pooledSession = node.borrow(0)) {
             try {
-                // 最多等待 5 秒讓執行緒結束
-                listenerThread.join(5000);
-            } catch (InterruptedException e) {
-                logger.warn("等待監聽執行緒結束時被中斷");
-                Thread.currentThread().interrupt();
+                Message requestMsg = payloadCodec.encode(pooledSession, txRequest);
+                requestMsg.setJMSCorrelationID(TRANSACTION_CORRELATION_ID);
+                requestMsg.setStringProperty(MqPayloadCodec.CHARACTER_SET_PROPERTY, String.valueOf(mqConfig.getCcsid()));
+                requestMsg.setStringProperty(MqReplyDispatcher.REPLY_NODE_PROPERTY, replyNode);
+                requestMsg.setJMSExpiration(System.currentTimeMillis() + mqConfig.getResponseWaitInterval());
+
+                pooledSession.getRequestProducer().send(requestMsg);
+                messageId = requestMsg.getJMSMessageID();
+            } catch (JMSException e) {
+                pooledSession.markBroken();
+                throw e;
             }
-            listenerThread = null;
         }
-        logger.info("MQ 監聽已停止");
+        logger.info("MQ發送訊息成功: messageId={}", messageId);
+        return messageId;
     }
 
-    private void handleReconnection() {
-        if (!isReconnecting.compareAndSet(false, true)) {
-            logger.info("其他執行序正在重新連線中，跳過此次重連");
-            return;
+    /**
+     * 依 mq.loadBalancing 選擇可用的 queue manager；全部都在重新連線中且有設定 mq.reconnect.parkTimeout 時，
+     * 等待任一個 queue manager 恢復
+     */
+    private MqQueueManagerNode selectNode() throws JMSException {
+        MqQueueManagerNode node = nextAvailableNode();
+        if (node != null) {
+            return node;
         }
 
-        try {
-            synchronized (connectionLock) {
-                closeConnections();
-                Thread.sleep(5000);
+        int parkTimeout = mqConfig.getReconnect().getParkTimeout();
+        if (parkTimeout <= 0 || closed) {
+            throw new JMSException("MQ連線尚未建立");
+        }
 
-                try {
-                    initMqConnection();
-                    needReconnect = false;
-                    logger.info("MQ連線已重新建立成功");
-                } catch (Exception e) {
-                    logger.error("MQ重新連線失敗: {}", e.getMessage());
-                    needReconnect = true;
-                }
-            }
+        mqServiceMetrics.incrementReconnectParked();
+        CompletableFuture<?>[] reconnected = nodes.stream()
+                .map(MqQueueManagerNode::connectedFuture)
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.anyOf(reconnected).get(parkTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new JMSException("等待 MQ 重新連線逾時 " + parkTimeout + " ms");
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-        } finally {
-            isReconnecting.set(false);
+            throw new JMSException("等待 MQ 重新連線時被中斷");
+        } catch (ExecutionException e) {
+            throw new JMSException("MQ連線尚未建立");
         }
+
+        node = nextAvailableNode();
+        if (node == null) {
+            throw new JMSException("MQ連線尚未建立");
+        }
+        return node;
     }
 
-    private void closeConnections() {
-        logger.warn("關閉MQ連線...");
-        try {
-            if (session != null) {
-                session.close();
-                session = null;
+    private MqQueueManagerNode nextAvailableNode() {
+        if (nodes.size() == 1) {
+            MqQueueManagerNode node = nodes.get(0);
+            return node.isAvailable() ? node : null;
+        }
+
+        // 每次從不同的 queue manager 開始找，least-outstanding 負載相同時也會輪流分配
+        int start = Math.floorMod(nextNode.getAndIncrement(), nodes.size());
+        MqQueueManagerNode selected = null;
+        int selectedOutstanding = Integer.MAX_VALUE;
+        for (int i = 0; i < nodes.size(); i++) {
+            MqQueueManagerNode node = nodes.get((start + i) % nodes.size());
+            if (!node.isAvailable()) {
+                continue;
             }
-            if (connection != null) {
-                connection.close();
-                connection = null;
+            if (mqConfig.getLoadBalancing() == MqConfig.LoadBalancing.ROUND_ROBIN) {
+                return node;
             }
-            logger.warn("MQ連線已關閉");
-        } catch (Exception e) {
-            logger.warn("關閉MQ連線時發生錯誤: {}", e.getMessage());
+            int outstanding = node.getOutstanding();
+            if (outstanding < selectedOutstanding) {
+                selected = node;
+                selectedOutstanding = outstanding;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 回應放回收到請求的 queue manager，該 queue manager 重新連線中時依 mq.reconnect.parkTimeout 等待
+     */
+    private MqPooledSession borrowResponseSession(RequestOrigin origin) throws JMSException {
+        if (origin != null) {
+            return origin.node.borrow(mqConfig.getReconnect().getParkTimeout());
         }
+        return selectNode().borrow(0);
+    }
+
+    private SyncTxTimeoutException syncTxTimeout(String messageId) {
+        mqServiceMetrics.incrementMqTimeouts();
+        String errorMsg = "MQ 接收訊息超時";
+        logger.error("{} - 訊息ID: {}, 等待時間: {} ms",
+                errorMsg,
+                messageId,
+                mqConfig.getResponseWaitInterval());
+        return new SyncTxTimeoutException(
+                errorMsg,
+                messageId,
+                mqConfig.getResponseWaitInterval());
+    }
+
+    /**
+     * 解析監聽到的交易請求，TextMessage 與 BytesMessage 皆可，內容為空時回傳 null
+     */
+    public TandemMessageRequest readTxRequest(Message message) throws JMSException {
+        return payloadCodec.decode(message, TandemMessageRequest.class);
+    }
+
+    /**
+     * 以常駐的 MessageListener 接收交易請求，並交給 worker pool 並行處理
+     * 啟用 mq.listener.batch 時以 transacted session 批次接收，由 MessageHandler.processRequestMessage 回傳回應
+     */
+    public synchronized void startListeningTxMessage(MessageHandler messageHandler) {
+        if (listenerContainer != null) {
+            logger.warn("監聽器已在運行中");
+            return;
+        }
+        MqConfig.ListenerBatchConfig batchConfig = mqConfig.getListener().getBatch();
+        if (batchConfig.isEnabled() && batchConfig.getProcessingTimeout() >= mqConfig.getResponseWaitInterval()) {
+            logger.warn("mq.listener.batch.processingTimeout ({} ms) 不小於 mq.responseWaitInterval ({} ms)，"
+                    + "逾時 rollback 的回應可能來不及送回 gateway", batchConfig.getProcessingTimeout(),
+                    mqConfig.getResponseWaitInterval());
+        }
+
+        listenerContainer = new MqListenerContainer(mqConfig.getListener(), mqServiceMetrics, messageHandler,
+                "JMSCorrelationID='" + TRANSACTION_CORRELATION_ID + "'", this::sendBatchReply);
+        for (MqQueueManagerNode node : nodes) {
+            node.startListener(listenerContainer, message -> rememberOrigin(node, message));
+        }
+        logger.info("已開始監聽佇列");
+    }
+
+    /**
+     * 記錄回應要放回的 queue manager 與 gateway；只有一個 queue manager 且請求未指定 gateway 時不需記錄
+     */
+    private void rememberOrigin(MqQueueManagerNode node, Message message) {
+        try {
+            String replyNode = message.getStringProperty(MqReplyDispatcher.REPLY_NODE_PROPERTY);
+            if (replyNode == null && nodes.size() == 1) {
+                return;
+            }
+            requestOrigins.put(message.getJMSMessageID(),
+                    new RequestOrigin(node, replyNode, System.currentTimeMillis()));
+        } catch (JMSException e) {
+            logger.warn("無法取得請求訊息的 messageId: {}", e.getMessage());
+        }
+    }
+
+    public synchronized void stopListening() {
+        if (listenerContainer == null) {
+            return;
+        }
+
+        logger.info("正在停止 MQ 監聽...");
+        for (MqQueueManagerNode node : nodes) {
+            node.stopListener();
+        }
+        // 最多等待 shutdownTimeout 讓處理中的訊息完成
+        listenerContainer.shutdown(mqConfig.getListener().getShutdownTimeout());
+        listenerContainer = null;
+        logger.info("MQ 監聽已停止");
     }
 
     public interface MessageHandler {
         void onRequestMessage(javax.jms.Message message);
+
+        /**
+         * 批次接收（mq.listener.batch）時使用：處理請求並以要放回 MQ 的回應完成，不需回應時為 null，
+         * 以例外結束的訊息會移到 backoutQueue
+         */
+        CompletableFuture<Object> processRequestMessage(javax.jms.Message message);
     }
 
+    /**
+     * 任一個 queue manager 連線正常即視為已連線
+     */
     public boolean isMqConnected() {
-        return isMqConnected;
+        return nodes.stream().anyMatch(MqQueueManagerNode::isMqConnected);
     }
 
     /**
@@ -454,10 +726,34 @@ public class MqConnectionManager implements DisposableBean {
     }
     
 
+    private static class RequestOrigin {
+        private final MqQueueManagerNode node;
+        private final String replyNode;
+        private final long receivedAt;
+
+        private RequestOrigin(MqQueueManagerNode node, String replyNode, long receivedAt) {
+            this.node = node;
+            this.replyNode = replyNode;
+            this.receivedAt = receivedAt;
+        }
+    }
+
     @Override
     public void destroy() throws Exception {
         logger.info("正在關閉 MQ 連線...");
+        closed = true;
+        queueDepthExecutor.shutdownNow();
         stopListening();
-        closeConnections();
+        if (batchProducer != null) {
+            batchProducer.close();
+        }
+        for (MqQueueManagerNode node : nodes) {
+            node.close();
+        }
+        responseExecutor.shutdown();
+        if (!responseExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
+            logger.warn("等待非同步交易回應處理結束逾時");
+        }
+        requestOrigins.clear();
     }
 }
@@ -0,0 +1,265 @@
+package tw.com.sc.mq;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tw.com.sc.model.MqConfig;
+import tw.com.sc.mq.metrics.MqServiceMetrics;
+
+/**
+ * 交易請求的監聽容器
+ * 以常駐的 MessageListener 接收請求佇列上的訊息，交給固定大小的 worker pool 並行處理。
+ * 待處理的訊息數量超過 concurrency + queueCapacity 時，MessageListener 會停下來等待，
+ * 讓訊息留在 MQ 上而不是堆積在記憶體中。
+ * 啟用 mq.listener.batch 時改由 MqBatchConsumer 以 transacted session 批次接收，回應與接收一起 commit。
+ */
+class MqListenerContainer {
+
+    interface TransactedSessionFactory {
+        MqPooledSession create() throws JMSException;
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(MqListenerContainer.class);
+
+    private final MqConfig.ListenerConfig listenerConfig;
+    private final MqServiceMetrics mqServiceMetrics;
+    private final MqConnectionManager.MessageHandler messageHandler;
+    private final String messageSelector;
+    private final MqBatchConsumer.ReplySender replySender;
+
+    private final ExecutorService workers;
+    private final Semaphore inFlightPermits;
+    private final int maxInFlight;
+    /**
+     * 各 queue manager 上的 consumer session，共用同一個 worker pool
+     */
+    private final Map<String, List<Session>> sessions = new HashMap<>();
+    /**
+     * 啟用 mq.listener.batch 時各 queue manager 上的批次 consumer
+     */
+    private final Map<String, List<MqBatchConsumer>> batchConsumers = new HashMap<>();
+    private final MqBatchConsumer.CarriedReplies carriedReplies = new MqBatchConsumer.CarriedReplies();
+
+    MqListenerContainer(MqConfig.ListenerConfig listenerConfig, MqServiceMetrics mqServiceMetrics,
+            MqConnectionManager.MessageHandler messageHandler, String messageSelector,
+            MqBatchConsumer.ReplySender replySender) {
+        this.listenerConfig = listenerConfig;
+        this.mqServiceMetrics = mqServiceMetrics;
+        this.messageHandler = messageHandler;
+        this.messageSelector = messageSelector;
+        this.replySender = replySender;
+
+        int concurrency = Math.max(1, listenerConfig.getConcurrency());
+        this.maxInFlight = concurrency + Math.max(0, listenerConfig.getQueueCapacity());
+        this.inFlightPermits = new Semaphore(maxInFlight);
+        this.workers = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new WorkerThreadFactory());
+    }
+
+    /**
+     * 已接收但尚未處理完成的訊息數量（處理中 + 等待中）
+     */
+    int getInFlightCount() {
+        return maxInFlight - inFlightPermits.availablePermits();
+    }
+
+    /**
+     * 在指定 queue manager 的連線上建立 consumer，重新連線後會再次呼叫
+     * onReceive 在訊息交給 worker 之前於監聽執行緒上呼叫，可為 null；批次模式的回應放回同一個 session，不會呼叫
+     */
+    synchronized void start(String queueManager, Connection connection, Queue requestQueue,
+            TransactedSessionFactory transactedSessions, Consumer<Message> onReceive) throws JMSException {
+        if (sessions.containsKey(queueManager) || batchConsumers.containsKey(queueManager)) {
+            return;
+        }
+        if (listenerConfig.getBatch().isEnabled()) {
+            startBatchConsumers(queueManager, requestQueue, transactedSessions);
+            return;
+        }
+
+        List<Session> queueManagerSessions = new ArrayList<>();
+        sessions.put(queueManager, queueManagerSessions);
+        try {
+            for (int i = 0; i < Math.max(1, listenerConfig.getConsumers()); i++) {
+                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                queueManagerSessions.add(session);
+                MessageConsumer consumer = session.createConsumer(requestQueue, messageSelector);
+                consumer.setMessageListener(message -> {
+                    if (onReceive != null) {
+                        onReceive.accept(message);
+                    }
+                    dispatch(message);
+                });
+            }
+        } catch (JMSException e) {
+            stopConsumers(queueManager);
+            throw e;
+        }
+        logger.info("已在 {} 啟動 {} 個 MQ 請求 consumer，worker 數量: {}，佇列容量: {}", queueManager,
+                queueManagerSessions.size(), listenerConfig.getConcurrency(), listenerConfig.getQueueCapacity());
+    }
+
+    private void startBatchConsumers(String queueManager, Queue requestQueue,
+            TransactedSessionFactory transactedSessions) throws JMSException {
+        List<MqBatchConsumer> queueManagerConsumers = new ArrayList<>();
+        batchConsumers.put(queueManager, queueManagerConsumers);
+        try {
+            for (int i = 0; i < Math.max(1, listenerConfig.getConsumers()); i++) {
+                MqBatchConsumer batchConsumer = new MqBatchConsumer("mq-batch-consumer-" + queueManager + "-" + i,
+                        listenerConfig.getBatch(), mqServiceMetrics, transactedSessions.create(), requestQueue,
+                        messageSelector, this::process, replySender, carriedReplies);
+                queueManagerConsumers.add(batchConsumer);
+                batchConsumer.start();
+            }
+        } catch (JMSException e) {
+            stopConsumers(queueManager);
+            throw e;
+        }
+        logger.info("已在 {} 啟動 {} 個 MQ 批次 consumer，每批最多 {} 筆，worker 數量: {}", queueManager,
+                queueManagerConsumers.size(), listenerConfig.getBatch().getMaxBatchSize(),
+                listenerConfig.getConcurrency());
+    }
+
+    /**
+     * 只關閉指定 queue manager 上的 consumer，worker pool 保留給重新連線後使用
+     * 連線已中斷，處理中的批次無法 commit，不等待直接關閉
+     */
+    synchronized void stopConsumers(String queueManager) {
+        List<Session> queueManagerSessions = sessions.remove(queueManager);
+        if (queueManagerSessions != null) {
+            closeSessions(queueManagerSessions);
+        }
+        List<MqBatchConsumer> queueManagerConsumers = batchConsumers.remove(queueManager);
+        if (queueManagerConsumers != null) {
+            queueManagerConsumers.forEach(batchConsumer -> batchConsumer.stop(0));
+        }
+    }
+
+    /**
+     * 停止所有 consumer，批次模式最多等待 shutdownTimeout 讓處理中的批次 commit
+     */
+    synchronized void stopConsumers() {
+        sessions.values().forEach(this::closeSessions);
+        sessions.clear();
+
+        long deadline = System.currentTimeMillis() + listenerConfig.getShutdownTimeout();
+        for (List<MqBatchConsumer> queueManagerConsumers : batchConsumers.values()) {
+            for (MqBatchConsumer batchConsumer : queueManagerConsumers) {
+                batchConsumer.stop(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+        }
+        batchConsumers.clear();
+    }
+
+    private void closeSessions(List<Session> queueManagerSessions) {
+        for (Session session : queueManagerSessions) {
+            try {
+                session.close();
+            } catch (JMSException e) {
+                logger.warn("關閉監聽 session 時發生錯誤: {}", e.getMessage());
+            }
+        }
+    }
+
+    void shutdown(long timeoutMillis) {
+        stopConsumers();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                logger.warn("等待處理中的 MQ 訊息逾時，強制停止 worker");
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatch(Message message) {
+        try {
+            if (!inFlightPermits.tryAcquire()) {
+                // worker 與等待佇列皆已滿，暫停接收新訊息
+                mqServiceMetrics.incrementListenerBackpressure();
+                inFlightPermits.acquire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("等待 worker 時被中斷，改由監聽執行緒直接處理");
+            messageHandler.onRequestMessage(message);
+            return;
+        }
+
+        try {
+            workers.execute(() -> {
+                try {
+                    messageHandler.onRequestMessage(message);
+                } catch (Exception e) {
+                    logger.error("處理 MQ 訊息時發生錯誤: {}", e.getMessage());
+                } finally {
+                    inFlightPermits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlightPermits.release();
+            logger.warn("worker pool 已停止，改由監聽執行緒直接處理: {}", e.getMessage());
+            messageHandler.onRequestMessage(message);
+        }
+    }
+
+    /**
+     * 批次模式下交給 worker 處理，與 MessageListener 模式共用 worker 數量與待處理上限
+     */
+    private CompletableFuture<Object> process(Message message) {
+        try {
+            if (!inFlightPermits.tryAcquire()) {
+                mqServiceMetrics.incrementListenerBackpressure();
+                inFlightPermits.acquire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        try {
+            return CompletableFuture.supplyAsync(() -> messageHandler.processRequestMessage(message), workers)
+                    .thenCompose(Function.identity())
+                    .whenComplete((reply, error) -> inFlightPermits.release());
+        } catch (RuntimeException e) {
+            inFlightPermits.release();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "mq-listener-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package tw.com.sc.mq;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.TextMessage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ibm.mq.headers.CCSID;
+
+import tw.com.sc.model.MqConfig;
+import tw.com.sc.model.txmsg.TxMessageCodec;
+
+/**
+ * MQ 訊息內容的編碼/解碼
+ * 啟用 mq.bytesPayload 時，電文由 Jackson 直接寫進 session 的重複使用緩衝區後成為 BytesMessage，不再經過 String；
+ * 接收時不論 TextMessage 或 BytesMessage 都可解析，BytesMessage 直接由訊息內容串流解析，字元集依 mq.ccsid。
+ */
+class MqPayloadCodec {
+
+    static final String CHARACTER_SET_PROPERTY = "JMS_IBM_Character_Set";
+
+    private static final Logger logger = LoggerFactory.getLogger(MqPayloadCodec.class);
+
+    private final boolean bytesPayload;
+    private final int ccsid;
+    private final Charset charset;
+
+    MqPayloadCodec(MqConfig mqConfig) {
+        this.bytesPayload = mqConfig.isBytesPayload();
+        this.ccsid = mqConfig.getCcsid();
+        this.charset = resolveCharset(mqConfig.getCcsid());
+    }
+
+    /**
+     * 建立訊息，payload 可為已序列化的 JSON 字串或 txmsg 電文物件
+     */
+    Message encode(MqPooledSession pooledSession, Object payload) throws JMSException {
+        if (!bytesPayload) {
+            String text = payload instanceof String json ? json : writeString(payload);
+            return pooledSession.getSession().createTextMessage(text);
+        }
+
+        BytesMessage message = pooledSession.getSession().createBytesMessage();
+        PayloadBuffer buffer = pooledSession.getPayloadBuffer();
+        buffer.reset();
+        try {
+            if (payload instanceof String json) {
+                buffer.write(json.getBytes(charset));
+            } else if (charset == StandardCharsets.UTF_8) {
+                TxMessageCodec.writeValue(buffer, payload);
+            } else {
+                TxMessageCodec.writeValue(new OutputStreamWriter(buffer, charset), payload);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("電文序列化失敗: " + e.getMessage(), e);
+        }
+        message.writeBytes(buffer.array(), 0, buffer.size());
+        message.setStringProperty(CHARACTER_SET_PROPERTY, String.valueOf(ccsid));
+        buffer.trim();
+        return message;
+    }
+
+    /**
+     * 解析訊息內容為指定的電文型別，內容為空時回傳 null
+     */
+    <T> T decode(Message message, Class<T> type) throws JMSException {
+        try {
+            if (message instanceof TextMessage textMessage) {
+                String text = textMessage.getText();
+                return text == null || text.isBlank() ? null : TxMessageCodec.readValue(text, type);
+            }
+            if (message instanceof BytesMessage bytesMessage) {
+                if (bytesMessage.getBodyLength() == 0) {
+                    return null;
+                }
+                Charset messageCharset = charsetOf(bytesMessage);
+                InputStream in = new BytesMessageInputStream(bytesMessage);
+                // Jackson 可自行判斷 UTF-8/16/32，其他字元集需先轉為字元
+                return messageCharset == StandardCharsets.UTF_8
+                        ? TxMessageCodec.readValue(in, type)
+                        : TxMessageCodec.readValue(new InputStreamReader(in, messageCharset), type);
+            }
+        } catch (IOException e) {
+            if (e.getCause() instanceof JMSException jmsException) {
+                throw jmsException;
+            }
+            throw new IllegalArgumentException("Failed to parse JSON: " + e.getMessage(), e);
+        }
+        logger.error("不支援的訊息類型: {}", message.getClass().getName());
+        throw new IllegalArgumentException("不支援的訊息類型");
+    }
+
+    private String writeString(Object payload) {
+        try {
+            return TxMessageCodec.writeValueAsString(payload);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("電文序列化失敗: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 優先使用訊息上的字元集，沒有時使用 mq.ccsid
+     */
+    private Charset charsetOf(BytesMessage message) throws JMSException {
+        String characterSet = message.getStringProperty(CHARACTER_SET_PROPERTY);
+        if (characterSet == null || characterSet.isBlank()) {
+            return charset;
+        }
+        try {
+            return characterSet.chars().allMatch(Character::isDigit)
+                    ? resolveCharset(Integer.parseInt(characterSet))
+                    : Charset.forName(characterSet);
+        } catch (RuntimeException e) {
+            return charset;
+        }
+    }
+
+    private static Charset resolveCharset(int ccsid) {
+        if (ccsid <= 0) {
+            return StandardCharsets.UTF_8;
+        }
+        try {
+            return Charset.forName(CCSID.getCodepage(ccsid));
+        } catch (UnsupportedEncodingException | RuntimeException e) {
+            logger.warn("不支援的 ccsid: {}，改用 UTF-8", ccsid);
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    /**
+     * 每個 pooled session 各自持有的序列化緩衝區，可直接取得內部陣列，避免 toByteArray 的複製
+     */
+    static class PayloadBuffer extends ByteArrayOutputStream {
+
+        private static final int INITIAL_SIZE = 4096;
+        private static final int MAX_RETAINED_SIZE = 256 * 1024;
+
+        PayloadBuffer() {
+            super(INITIAL_SIZE);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        /**
+         * 偶爾出現的大電文不長期佔用記憶體
+         */
+        void trim() {
+            if (buf.length > MAX_RETAINED_SIZE) {
+                buf = new byte[INITIAL_SIZE];
+            }
+            reset();
+        }
+    }
+
+    /**
+     * 以串流方式讀取 BytesMessage，不先複製整個訊息內容
+     */
+    private static class BytesMessageInputStream extends InputStream {
+
+        private final BytesMessage message;
+
+        private BytesMessageInputStream(BytesMessage message) {
+            this.message = message;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                if (off == 0) {
+                    return message.readBytes(b, len);
+                }
+                byte[] chunk = new byte[len];
+                int count = message.readBytes(chunk, len);
+                if (count > 0) {
+                    System.arraycopy(chunk, 0, b, off, count);
+                }
+                return count;
+            } catch (JMSException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package tw.com.sc.mq;
+
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+/**
+ * 從 MqSessionPool 借出的 session 與其 producer
+ * 使用 try-with-resources 歸還；發生 JMSException 時呼叫 markBroken() 讓池丟棄此 session。
+ * 由 createTransactedSession 建立的 session 不屬於池，close() 時直接關閉。
+ */
+class MqPooledSession implements AutoCloseable {
+
+    private final MqSessionPool pool;
+    /**
+     * session 所屬連線在池中的位置，不屬於池時為 -1
+     */
+    private final int connectionIndex;
+    private final Session session;
+    private final MessageProducer requestProducer;
+    private final MessageProducer responseProducer;
+    private MqPayloadCodec.PayloadBuffer payloadBuffer;
+    private boolean broken = false;
+
+    MqPooledSession(MqSessionPool pool, int connectionIndex, Session session, MessageProducer requestProducer,
+            MessageProducer responseProducer) {
+        this.pool = pool;
+        this.connectionIndex = connectionIndex;
+        this.session = session;
+        this.requestProducer = requestProducer;
+        this.responseProducer = responseProducer;
+    }
+
+    Session getSession() {
+        return session;
+    }
+
+    int getConnectionIndex() {
+        return connectionIndex;
+    }
+
+    MessageProducer getRequestProducer() {
+        return requestProducer;
+    }
+
+    MessageProducer getResponseProducer() {
+        return responseProducer;
+    }
+
+    /**
+     * session 同一時間只會被一個執行緒借用，緩衝區可直接重複使用
+     */
+    MqPayloadCodec.PayloadBuffer getPayloadBuffer() {
+        if (payloadBuffer == null) {
+            payloadBuffer = new MqPayloadCodec.PayloadBuffer();
+        }
+        return payloadBuffer;
+    }
+
+    void markBroken() {
+        this.broken = true;
+    }
+
+    boolean isBroken() {
+        return broken;
+    }
+
+    void closeQuietly() {
+        try {
+            session.close();
+        } catch (JMSException e) {
+            // session 已損壞，忽略關閉時的錯誤
+        }
+    }
+
+    @Override
+    public void close() {
+        if (pool == null) {
+            closeQuietly();
+            return;
+        }
+        pool.release(this);
+    }
+}
@@ -0,0 +1,151 @@
+package tw.com.sc.mq;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.jms.JMSException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ibm.mq.MQException;
+import com.ibm.mq.MQQueue;
+import com.ibm.mq.MQQueueManager;
+import com.ibm.mq.constants.CMQC;
+
+import tw.com.sc.model.MqConfig;
+
+/**
+ * 以 MQQueue.getCurrentDepth() 向 queue manager 查詢佇列深度
+ * 使用獨立的 MQQueueManager 連線，佇列以 MQOO_INQUIRE 開啟後保留重複使用，每次查詢只需一次 MQINQ，與佇列中的訊息數量無關。
+ * 設定多個 mq.queueManagers 時回傳各 queue manager 的深度總和，無法連線的 queue manager 略過。
+ * 查詢失敗時關閉該 queue manager 的連線，下一次查詢再重新建立。
+ */
+public class MqQueueDepthProvider implements QueueDepthProvider {
+
+    private static final int OPEN_OPTIONS = CMQC.MQOO_INQUIRE | CMQC.MQOO_FAIL_IF_QUIESCING;
+
+    private final Logger logger = LoggerFactory.getLogger(MqQueueDepthProvider.class);
+
+    private final MqConfig mqConfig;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<QueueManagerInquiry> inquiries = new ArrayList<>();
+
+    public MqQueueDepthProvider(MqConfig mqConfig) {
+        this.mqConfig = mqConfig;
+        for (MqConfig.QueueManagerConfig queueManager : mqConfig.resolveQueueManagers()) {
+            inquiries.add(new QueueManagerInquiry(queueManager));
+        }
+    }
+
+    @Override
+    public int getDepth(String queueName) throws JMSException {
+        lock.lock();
+        try {
+            int depth = 0;
+            int failed = 0;
+            JMSException lastError = null;
+            for (QueueManagerInquiry inquiry : inquiries) {
+                try {
+                    depth += inquiry.getDepth(queueName);
+                } catch (JMSException e) {
+                    failed++;
+                    lastError = e;
+                    if (inquiries.size() > 1) {
+                        logger.warn("{}", e.getMessage());
+                    }
+                }
+            }
+            if (failed == inquiries.size()) {
+                throw lastError;
+            }
+            return depth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            inquiries.forEach(QueueManagerInquiry::closeQuietly);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private class QueueManagerInquiry {
+        private final MqConfig.QueueManagerConfig config;
+        private final Map<String, MQQueue> queues = new HashMap<>();
+        private MQQueueManager queueManager;
+
+        private QueueManagerInquiry(MqConfig.QueueManagerConfig config) {
+            this.config = config;
+        }
+
+        private int getDepth(String queueName) throws JMSException {
+            try {
+                MQQueue queue = queues.get(queueName);
+                if (queue == null) {
+                    queue = connect().accessQueue(queueName, OPEN_OPTIONS);
+                    queues.put(queueName, queue);
+                }
+                return queue.getCurrentDepth();
+            } catch (MQException e) {
+                closeQuietly();
+                JMSException jmsException = new JMSException("查詢 " + config.getName() + " 佇列 " + queueName
+                        + " 深度失敗: " + e.getMessage(), String.valueOf(e.getReason()));
+                jmsException.setLinkedException(e);
+                throw jmsException;
+            }
+        }
+
+        private MQQueueManager connect() throws MQException {
+            if (queueManager != null && queueManager.isConnected()) {
+                return queueManager;
+            }
+
+            Hashtable<String, Object> properties = new Hashtable<>();
+            properties.put(CMQC.HOST_NAME_PROPERTY, config.getHost());
+            properties.put(CMQC.PORT_PROPERTY, config.getPort());
+            properties.put(CMQC.CHANNEL_PROPERTY, config.getChannelName());
+            properties.put(CMQC.TRANSPORT_PROPERTY, CMQC.TRANSPORT_MQSERIES_CLIENT);
+            // keyStore / trustStore 沿用 MqConnectionManager 設定的 javax.net.ssl.* 系統參數
+            if (mqConfig.getSsl() != null && mqConfig.getSsl().getCipherSuite() != null) {
+                properties.put(CMQC.SSL_CIPHER_SUITE_PROPERTY, mqConfig.getSsl().getCipherSuite());
+                if (mqConfig.getSsl().getSslPeerName() != null) {
+                    properties.put(CMQC.SSL_PEER_NAME_PROPERTY, mqConfig.getSsl().getSslPeerName());
+                }
+            }
+
+            queueManager = new MQQueueManager(config.getQmgr(), properties);
+            logger.info("已建立查詢佇列深度用的 MQ 連線: {}", config.getName());
+            return queueManager;
+        }
+
+        private void closeQuietly() {
+            for (MQQueue queue : queues.values()) {
+                try {
+                    queue.close();
+                } catch (MQException e) {
+                    logger.debug("關閉佇列時發生錯誤: {}", e.getMessage());
+                }
+            }
+            queues.clear();
+
+            if (queueManager != null) {
+                try {
+                    queueManager.disconnect();
+                } catch (MQException e) {
+                    logger.debug("關閉查詢佇列深度用的 MQ 連線時發生錯誤: {}", e.getMessage());
+                }
+                queueManager = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,547 @@
+package tw.com.sc.mq;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tw.com.sc.model.MqConfig;
+import tw.com.sc.mq.metrics.MqServiceMetrics;
+
+/**
+ * 單一 queue manager 的連線
+ * 包含 session pool、回應分派器、連線存活檢查與重新連線。連線多個 queue manager 時每個各有一個，
+ * 各自斷線與重連，一個 queue manager 中斷時不影響其他 queue manager 上的交易。
+ */
+class MqQueueManagerNode {
+
+    private final Logger logger = LoggerFactory.getLogger(MqQueueManagerNode.class);
+
+    private final String name;
+    private final ConnectionFactory connectionFactory;
+    private final MqConfig mqConfig;
+    private final MqServiceMetrics mqServiceMetrics;
+    private final String heartbeatPrefix;
+    private final MqReplyDispatcher replyDispatcher;
+
+    private volatile MqSessionPool sessionPool;
+    private volatile Connection connection;
+    private Session heartbeatSession;
+    private MessageProducer heartbeatProducer;
+    private MessageConsumer heartbeatConsumer;
+    private Queue requestQueue;
+    private volatile boolean isMqConnected = false;
+    private final AtomicBoolean isReconnecting = new AtomicBoolean(false);
+
+    /**
+     * 重新連線在獨立的執行緒上進行，不佔用請求或排程執行緒
+     */
+    private final ScheduledExecutorService reconnectExecutor;
+    /**
+     * 心跳檢查在各 queue manager 自己的執行緒上進行，無法回應的 queue manager 不會延誤其他 queue manager 與排程工作
+     */
+    private final ExecutorService heartbeatExecutor;
+    private final AtomicBoolean heartbeatInProgress = new AtomicBoolean(false);
+    /**
+     * 下一個可用的 session pool，重新連線期間的請求在此等待（mq.reconnect.parkTimeout）
+     */
+    private volatile CompletableFuture<MqSessionPool> connected = new CompletableFuture<>();
+    private volatile long connectionGeneration = 0;
+    private volatile long disconnectedAt = 0;
+    private volatile boolean replyConsumersRequested = false;
+    /**
+     * 啟動回應 consumer 與替換 session pool 互斥，請求執行緒不會在替換中的舊連線上啟動 consumer
+     */
+    private final ReentrantLock replyConsumersLock = new ReentrantLock();
+    private volatile boolean closed = false;
+
+    private volatile MqListenerContainer listenerContainer;
+    private volatile Consumer<Message> onRequestReceived;
+
+    MqQueueManagerNode(String name, ConnectionFactory connectionFactory, MqConfig mqConfig,
+            MqServiceMetrics mqServiceMetrics, String heartbeatPrefix, String replyNode) {
+        this.name = name;
+        this.connectionFactory = connectionFactory;
+        this.mqConfig = mqConfig;
+        this.mqServiceMetrics = mqServiceMetrics;
+        this.heartbeatPrefix = heartbeatPrefix;
+        this.replyDispatcher = new MqReplyDispatcher(mqServiceMetrics, name, replyNode,
+                mqConfig.getMaxUnmatchedReplies());
+        this.reconnectExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mq-reconnect-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.heartbeatExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mq-heartbeat-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        mqServiceMetrics.registerQueueManagerGauges(name, () -> isAvailable() ? 1 : 0, this::getOutstanding);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    ConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    MqReplyDispatcher getReplyDispatcher() {
+        return replyDispatcher;
+    }
+
+    /**
+     * 連線已建立且不在重新連線中，可接受新的請求
+     */
+    boolean isAvailable() {
+        return sessionPool != null;
+    }
+
+    boolean isMqConnected() {
+        return isMqConnected;
+    }
+
+    /**
+     * 借出中的 session 與等待回應的雙向交易數量，作為 least-outstanding 的負載依據
+     */
+    int getOutstanding() {
+        MqSessionPool currentPool = sessionPool;
+        return (currentPool == null ? 0 : currentPool.getActiveCount()) + replyDispatcher.getPendingCount();
+    }
+
+    int getActiveCount() {
+        MqSessionPool currentPool = sessionPool;
+        return currentPool == null ? 0 : currentPool.getActiveCount();
+    }
+
+    int getIdleCount() {
+        MqSessionPool currentPool = sessionPool;
+        return currentPool == null ? 0 : currentPool.getIdleCount();
+    }
+
+    int getConnectionCount() {
+        MqSessionPool currentPool = sessionPool;
+        return currentPool == null ? 0 : currentPool.getConnectionCount();
+    }
+
+    CompletableFuture<MqSessionPool> connectedFuture() {
+        return connected;
+    }
+
+    /**
+     * 啟動時建立連線，最多嘗試 mq.reconnect.startupAttempts 次
+     */
+    void start() {
+        MqConfig.ReconnectConfig reconnectConfig = mqConfig.getReconnect();
+        long backoff = reconnectConfig.getInitialInterval();
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                logger.info("嘗試建立MQ連線 {} (第{}次)...", name, attempt);
+                connect();
+                return;
+            } catch (Exception e) {
+                if (attempt >= Math.max(1, reconnectConfig.getStartupAttempts())) {
+                    logger.error("MQ連線 {} 建立失敗，已重試{}次: {}", name, attempt, e.getMessage());
+                    throw new MqTransactionManagerException("MQ連線建立失敗: " + name, e);
+                }
+                try {
+                    Thread.sleep(withJitter(backoff));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new MqTransactionManagerException("MQ連線重試被中斷", ie);
+                }
+                backoff = nextBackoff(backoff);
+            }
+        }
+    }
+
+    /**
+     * 建立新的 session pool，全部準備完成後才替換目前的 pool，失敗時關閉新的 pool，不影響目前的狀態
+     * 重新連線前已有雙向交易時，回應 consumer 也在替換之前建立
+     */
+    private void connect() throws JMSException {
+        long generation = connectionGeneration + 1;
+        MqSessionPool newSessionPool = new MqSessionPool(connectionFactory, mqConfig, mqServiceMetrics,
+                e -> onConnectionException(generation, e));
+        Connection newConnection;
+        try {
+            newSessionPool.start();
+            newConnection = newSessionPool.getPrimaryConnection();
+            if (mqConfig.getHeartbeat().getMode() == MqConfig.HeartbeatMode.HEALTH_QUEUE) {
+                startHealthQueue(newConnection);
+            }
+        } catch (JMSException | RuntimeException e) {
+            newSessionPool.close();
+            throw e;
+        }
+
+        replyConsumersLock.lock();
+        try {
+            try {
+                if (replyConsumersRequested) {
+                    // 重新連線前送出的雙向交易仍在等待回應；已在舊連線上的 consumer 會先關閉
+                    replyDispatcher.start(newConnection, newSessionPool.getResponseQueue(),
+                            mqConfig.getReplyConsumers());
+                }
+            } catch (JMSException | RuntimeException e) {
+                replyDispatcher.stopConsumers();
+                newSessionPool.close();
+                throw e;
+            }
+
+            connection = newConnection;
+            requestQueue = newSessionPool.getRequestQueue();
+            connectionGeneration = generation;
+            sessionPool = newSessionPool;
+        } finally {
+            replyConsumersLock.unlock();
+        }
+        isMqConnected = true;
+        connected.complete(newSessionPool);
+        logger.info("MQ連線 {} 建立成功，連線存活檢查方式: {}", name, mqConfig.getHeartbeat().getMode());
+    }
+
+    /**
+     * 要求重新連線，立即回傳；關閉舊連線與重試都在 mq-reconnect 執行緒上進行
+     * 重新連線期間此 queue manager 不再分配到新的請求
+     */
+    void requestReconnect(String reason) {
+        if (closed || !isReconnecting.compareAndSet(false, true)) {
+            return;
+        }
+
+        logger.warn("MQ連線 {} 異常，開始重新連線: {}", name, reason);
+        isMqConnected = false;
+        disconnectedAt = System.currentTimeMillis();
+        // 先換上新的等待點再移除舊的 pool，之後進來的請求不會拿到已關閉的 pool
+        connected = new CompletableFuture<>();
+        MqSessionPool oldSessionPool = sessionPool;
+        sessionPool = null;
+        connection = null;
+
+        reconnectExecutor.execute(() -> {
+            stopConsumers();
+            attemptReconnect(mqConfig.getReconnect().getInitialInterval(), 1);
+            // 中斷的連線關閉時可能要等到逾時，放在新連線建立之後，不延後恢復的時間
+            closeSessionPool(oldSessionPool);
+        });
+    }
+
+    private void attemptReconnect(long backoff, int attempt) {
+        if (closed) {
+            return;
+        }
+
+        mqServiceMetrics.incrementReconnectAttempts();
+        try {
+            connect();
+            startListenerConsumers();
+            mqServiceMetrics.recordReconnectDuration(System.currentTimeMillis() - disconnectedAt);
+            isReconnecting.set(false);
+            logger.info("MQ連線 {} 已重新建立成功 (第{}次嘗試)", name, attempt);
+        } catch (Exception e) {
+            long delay = withJitter(backoff);
+            logger.error("MQ連線 {} 重新連線失敗 (第{}次): {}，{} ms 後重試", name, attempt, e.getMessage(), delay);
+            try {
+                reconnectExecutor.schedule(() -> attemptReconnect(nextBackoff(backoff), attempt + 1),
+                        delay, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException rejected) {
+                logger.warn("已停止重新連線: {}", rejected.getMessage());
+            }
+        }
+    }
+
+    private long nextBackoff(long backoff) {
+        MqConfig.ReconnectConfig reconnectConfig = mqConfig.getReconnect();
+        return Math.min(reconnectConfig.getMaxInterval(),
+                Math.max(1, (long) (backoff * reconnectConfig.getMultiplier())));
+    }
+
+    /**
+     * 等待時間取 backoff 的一半再加上隨機的另一半，避免多個節點在 queue manager 切換後同時重連
+     */
+    private static long withJitter(long backoff) {
+        long half = Math.max(1, backoff / 2);
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    /**
+     * 心跳使用獨立的 session 與專屬的 health queue，不佔用 session pool 與交易佇列；consumer 只在連線建立時建立一次
+     */
+    private void startHealthQueue(Connection newConnection) throws JMSException {
+        heartbeatSession = newConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Queue healthQueue = heartbeatSession.createQueue(mqConfig.getHeartbeat().getQueue());
+        heartbeatProducer = heartbeatSession.createProducer(healthQueue);
+        heartbeatProducer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        heartbeatConsumer = heartbeatSession.createConsumer(healthQueue,
+                "JMSCorrelationID LIKE '" + heartbeatPrefix + "%'");
+    }
+
+    /**
+     * 連線中斷通知，只處理目前這一組連線的通知，已替換掉的舊連線不再觸發重連
+     */
+    private void onConnectionException(long generation, JMSException e) {
+        if (generation != connectionGeneration) {
+            return;
+        }
+        logger.warn("MQ連線 {} 中斷: {}", name, e.getMessage());
+        mqServiceMetrics.incrementHeartbeatFailed();
+        requestReconnect(e.getMessage());
+    }
+
+    /**
+     * 在此 queue manager 的心跳執行緒上檢查連線狀態，成功時呼叫 onHealthy；上一次檢查尚未完成時略過
+     */
+    void heartbeatAsync(Runnable onHealthy) {
+        if (!heartbeatInProgress.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            heartbeatExecutor.execute(() -> {
+                try {
+                    if (heartbeat()) {
+                        onHealthy.run();
+                    }
+                } finally {
+                    heartbeatInProgress.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            heartbeatInProgress.set(false);
+        }
+    }
+
+    /**
+     * 檢查連線狀態，成功時回傳 true
+     */
+    boolean heartbeat() {
+        // 重新連線中，由 mq-reconnect 執行緒處理
+        if (isReconnecting.get()) {
+            return false;
+        }
+        // 檢查當前連線狀態
+        if (sessionPool == null) {
+            requestReconnect("MQ連線尚未建立");
+            return false;
+        }
+
+        try {
+            switch (mqConfig.getHeartbeat().getMode()) {
+                case PING -> ping();
+                case HEALTH_QUEUE -> healthQueueRoundTrip();
+                default -> {
+                    // 連線中斷由 ExceptionListener 通知，不需額外檢查
+                }
+            }
+            isMqConnected = true;
+            return true;
+        } catch (JMSException e) {
+            isMqConnected = false;
+            mqServiceMetrics.incrementHeartbeatFailed();
+            logger.warn("MQ心跳檢查失敗 {}: {}", name, e.getMessage());
+            requestReconnect(e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 在主要連線上建立並關閉一個 session，確認 queue manager 可回應，不產生任何訊息
+     */
+    private void ping() throws JMSException {
+        Connection currentConnection = connection;
+        if (currentConnection == null) {
+            throw new JMSException("MQ連線尚未建立");
+        }
+        Session session = currentConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        session.close();
+        logger.debug("MQ連線 {} ping 成功", name);
+    }
+
+    private void healthQueueRoundTrip() throws JMSException {
+        if (heartbeatSession == null) {
+            throw new JMSException("MQ心跳 session 尚未建立");
+        }
+
+        String correlationId = heartbeatPrefix + System.currentTimeMillis();
+        Message message = heartbeatSession.createTextMessage("HEARTBEAT");
+        message.setJMSCorrelationID(correlationId);
+        heartbeatProducer.send(message, DeliveryMode.NON_PERSISTENT, Message.DEFAULT_PRIORITY,
+                mqConfig.getHeartbeatInterval());
+        logger.debug("MQ發送心跳檢查訊息成功: correlationId={}", correlationId);
+
+        // 略過先前逾時才到達的心跳訊息
+        long deadline = System.currentTimeMillis() + mqConfig.getHeartbeatInterval();
+        long remaining;
+        while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+            Message response = heartbeatConsumer.receive(remaining);
+            if (response == null) {
+                break;
+            }
+            if (correlationId.equals(response.getJMSCorrelationID())) {
+                logger.debug("MQ心跳檢查成功，correlationId: {}", correlationId);
+                return;
+            }
+        }
+        throw new JMSException("心跳檢查超時");
+    }
+
+    MqPooledSession borrow(long parkTimeout) throws JMSException {
+        return currentSessionPool(parkTimeout).borrow();
+    }
+
+    MqPooledSession createTransactedSession(long parkTimeout) throws JMSException {
+        return currentSessionPool(parkTimeout).createTransactedSession();
+    }
+
+    /**
+     * 取得目前的 session pool；重新連線中且 parkTimeout 大於 0 時，等待新的連線建立
+     */
+    private MqSessionPool currentSessionPool(long parkTimeout) throws JMSException {
+        MqSessionPool currentPool = sessionPool;
+        if (currentPool != null) {
+            return currentPool;
+        }
+
+        if (parkTimeout <= 0 || closed) {
+            throw new JMSException("MQ連線尚未建立: " + name);
+        }
+
+        mqServiceMetrics.incrementReconnectParked();
+        try {
+            return connected.get(parkTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new JMSException("等待 MQ 重新連線逾時 " + parkTimeout + " ms: " + name);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMSException("等待 MQ 重新連線時被中斷");
+        } catch (ExecutionException e) {
+            throw new JMSException("MQ連線尚未建立: " + name);
+        }
+    }
+
+    /**
+     * 確認回應 consumer 已在目前的連線上啟動
+     * 先標記需要回應 consumer，重新連線中時由 connect() 在新連線上啟動；持有 replyConsumersLock 時才讀取 sessionPool，
+     * 不會在已被替換或正在中斷的連線上啟動
+     */
+    void ensureReplyDispatcherStarted() throws JMSException {
+        replyConsumersRequested = true;
+        MqSessionPool currentPool = currentSessionPool(0);
+        if (replyDispatcher.isStartedOn(currentPool.getPrimaryConnection())) {
+            return;
+        }
+
+        replyConsumersLock.lock();
+        try {
+            MqSessionPool latestPool = sessionPool;
+            if (latestPool == null) {
+                return;
+            }
+            replyDispatcher.start(latestPool.getPrimaryConnection(), latestPool.getResponseQueue(),
+                    mqConfig.getReplyConsumers());
+        } finally {
+            replyConsumersLock.unlock();
+        }
+    }
+
+    void sweepExpiredReplies() {
+        if (replyDispatcher.isStarted()) {
+            replyDispatcher.sweepExpired(mqConfig.getResponseWaitInterval());
+        }
+    }
+
+    /**
+     * 在此 queue manager 上建立請求 consumer，重新連線後自動再建立
+     */
+    void startListener(MqListenerContainer container, Consumer<Message> onReceive) {
+        this.onRequestReceived = onReceive;
+        this.listenerContainer = container;
+        startListenerConsumers();
+    }
+
+    void stopListener() {
+        listenerContainer = null;
+    }
+
+    private void startListenerConsumers() {
+        MqListenerContainer currentContainer = listenerContainer;
+        Connection currentConnection = connection;
+        MqSessionPool currentPool = sessionPool;
+        if (currentContainer == null || currentConnection == null || currentPool == null) {
+            return;
+        }
+
+        try {
+            currentContainer.start(name, currentConnection, requestQueue, currentPool::createTransactedSession,
+                    onRequestReceived);
+        } catch (JMSException e) {
+            // 連線異常時由心跳檢查觸發重新連線，重連成功後會再次建立 consumer
+            logger.error("建立監聽 consumer 時發生錯誤 {}: {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * 關閉 consumer 與心跳 session；等待中的雙向交易保留，重新連線後由新的回應 consumer 接手
+     */
+    private void stopConsumers() {
+        replyDispatcher.stopConsumers();
+        MqListenerContainer currentContainer = listenerContainer;
+        if (currentContainer != null) {
+            currentContainer.stopConsumers(name);
+        }
+        heartbeatSession = null;
+        heartbeatProducer = null;
+        heartbeatConsumer = null;
+    }
+
+    private void closeSessionPool(MqSessionPool oldSessionPool) {
+        if (oldSessionPool == null) {
+            return;
+        }
+        logger.warn("關閉MQ連線 {}...", name);
+        try {
+            oldSessionPool.close();
+            logger.warn("MQ連線 {} 已關閉", name);
+        } catch (Exception e) {
+            logger.warn("關閉MQ連線時發生錯誤: {}", e.getMessage());
+        }
+    }
+
+    void close() {
+        closed = true;
+        reconnectExecutor.shutdownNow();
+        heartbeatExecutor.shutdownNow();
+        connected.completeExceptionally(new JMSException("MQ連線已關閉"));
+        replyDispatcher.stop("MQ連線已關閉");
+        MqSessionPool currentPool = sessionPool;
+        sessionPool = null;
+        connection = null;
+        isMqConnected = false;
+        stopConsumers();
+        closeSessionPool(currentPool);
+    }
+}
@@ -0,0 +1,252 @@
+package tw.com.sc.mq;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tw.com.sc.mq.metrics.MqServiceMetrics;
+
+/**
+ * 雙向交易的回應分派器
+ * 以常駐的 consumer 接收回應佇列上的訊息，再依 JMSCorrelationID 交給等待中的請求，
+ * 避免每筆交易都要建立/關閉一次帶 selector 的 consumer。
+ */
+class MqReplyDispatcher implements MessageListener {
+
+    /**
+     * 請求與回應共用同一個佇列，雙向交易請求帶上 gateway 的識別碼，adapter 放回回應時複製此屬性，
+     * 多個 gateway 同時連線時只會收到自己送出的請求的回應
+     */
+    static final String REPLY_NODE_PROPERTY = "ISIS_REPLY_NODE";
+
+    private final Logger logger = LoggerFactory.getLogger(MqReplyDispatcher.class);
+    private final MqServiceMetrics mqServiceMetrics;
+    /**
+     * 回應訊息的 correlationId 為請求訊息的 JMSMessageID，一律以 "ID:" 開頭，
+     * 藉此避開同一個佇列上的交易請求 (TX) 與心跳訊息 (HB...)，再以 REPLY_NODE_PROPERTY 限定為自己的回應
+     */
+    private final String replySelector;
+    private final int maxUnmatchedReplies;
+
+    private final Map<String, PendingReply> pendingReplies = new ConcurrentHashMap<>();
+    private final Map<String, UnmatchedReply> unmatchedReplies = new ConcurrentHashMap<>();
+
+    private final List<Session> sessions = new ArrayList<>();
+    private final ReentrantLock lifecycleLock = new ReentrantLock();
+    /**
+     * 回應 consumer 所在的連線，未啟動時為 null
+     */
+    private volatile Connection startedOn;
+
+    MqReplyDispatcher(MqServiceMetrics mqServiceMetrics, String queueManager, String replyNode,
+            int maxUnmatchedReplies) {
+        this.mqServiceMetrics = mqServiceMetrics;
+        this.replySelector = "JMSCorrelationID LIKE 'ID:%' AND " + REPLY_NODE_PROPERTY + " = '" + replyNode + "'";
+        this.maxUnmatchedReplies = Math.max(1, maxUnmatchedReplies);
+        this.mqServiceMetrics.registerPendingRepliesGauge(pendingReplies, queueManager);
+    }
+
+    boolean isStarted() {
+        return startedOn != null;
+    }
+
+    boolean isStartedOn(Connection connection) {
+        return startedOn == connection;
+    }
+
+    int getPendingCount() {
+        return pendingReplies.size();
+    }
+
+    /**
+     * 在指定的連線上建立固定數量的回應 consumer，每個 consumer 使用獨立的 session
+     * 已在其他（已中斷的）連線上啟動時，先關閉舊的 consumer 再重新建立
+     */
+    void start(Connection connection, Queue responseQueue, int consumerCount) throws JMSException {
+        // 第一筆雙向交易會在請求執行緒上觸發，使用 ReentrantLock 避免 virtual thread 被 pin 住
+        lifecycleLock.lock();
+        try {
+            if (startedOn == connection) {
+                return;
+            }
+            if (startedOn != null) {
+                startedOn = null;
+                closeSessions();
+            }
+
+            try {
+                for (int i = 0; i < Math.max(1, consumerCount); i++) {
+                    Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                    sessions.add(session);
+                    MessageConsumer consumer = session.createConsumer(responseQueue, replySelector);
+                    consumer.setMessageListener(this);
+                }
+            } catch (JMSException e) {
+                closeSessions();
+                throw e;
+            }
+
+            startedOn = connection;
+            logger.info("已啟動 {} 個 MQ 回應 consumer", sessions.size());
+        } finally {
+            lifecycleLock.unlock();
+        }
+    }
+
+    /**
+     * 登記等待中的請求，若回應已經先到達則直接完成
+     */
+    CompletableFuture<Message> register(String messageId, long timeoutMillis) {
+        PendingReply pendingReply = new PendingReply(System.currentTimeMillis() + timeoutMillis);
+        pendingReplies.put(messageId, pendingReply);
+
+        UnmatchedReply unmatchedReply = unmatchedReplies.remove(messageId);
+        if (unmatchedReply != null && pendingReplies.remove(messageId, pendingReply)) {
+            pendingReply.future.complete(unmatchedReply.message);
+        }
+        return pendingReply.future;
+    }
+
+    void cancel(String messageId) {
+        pendingReplies.remove(messageId);
+    }
+
+    @Override
+    public void onMessage(Message message) {
+        String correlationId;
+        try {
+            correlationId = message.getJMSCorrelationID();
+        } catch (JMSException e) {
+            logger.warn("無法取得回應訊息的 correlationId: {}", e.getMessage());
+            return;
+        }
+
+        PendingReply pendingReply = pendingReplies.remove(correlationId);
+        if (pendingReply != null) {
+            pendingReply.future.complete(message);
+            return;
+        }
+
+        if (unmatchedReplies.size() >= maxUnmatchedReplies) {
+            // 大量回應無人認領時不再暫存，避免佔用記憶體
+            mqServiceMetrics.incrementLateReplies();
+            logger.warn("未認領的 MQ 回應已達上限 {}，捨棄回應: correlationId={}", maxUnmatchedReplies, correlationId);
+            return;
+        }
+
+        // 請求尚未登記（回應比 register 早到）或已經逾時，先暫存交給 sweepExpired 處理
+        unmatchedReplies.put(correlationId, new UnmatchedReply(message, System.currentTimeMillis()));
+        if (pendingReplies.containsKey(correlationId)) {
+            UnmatchedReply unmatchedReply = unmatchedReplies.remove(correlationId);
+            PendingReply registered = pendingReplies.remove(correlationId);
+            if (unmatchedReply != null) {
+                if (registered != null) {
+                    registered.future.complete(unmatchedReply.message);
+                } else {
+                    mqServiceMetrics.incrementLateReplies();
+                }
+            }
+        }
+    }
+
+    /**
+     * 清除已逾時的等待請求，以及超過保留時間仍無人認領的回應（視為逾時後才到達的回應）
+     */
+    void sweepExpired(long unmatchedRetentionMillis) {
+        long now = System.currentTimeMillis();
+
+        Iterator<Map.Entry<String, PendingReply>> pending = pendingReplies.entrySet().iterator();
+        while (pending.hasNext()) {
+            Map.Entry<String, PendingReply> entry = pending.next();
+            if (entry.getValue().deadline <= now) {
+                pending.remove();
+                entry.getValue().future.completeExceptionally(
+                        new TimeoutException("等待 MQ 回應逾時: " + entry.getKey()));
+            }
+        }
+
+        Iterator<Map.Entry<String, UnmatchedReply>> unmatched = unmatchedReplies.entrySet().iterator();
+        while (unmatched.hasNext()) {
+            Map.Entry<String, UnmatchedReply> entry = unmatched.next();
+            if (entry.getValue().receivedAt + unmatchedRetentionMillis <= now) {
+                unmatched.remove();
+                mqServiceMetrics.incrementLateReplies();
+                logger.warn("收到逾時後才到達的 MQ 回應: correlationId={}", entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * 只關閉回應 consumer，等待中的請求保留到重新連線後繼續等待，直到逾時
+     */
+    void stopConsumers() {
+        lifecycleLock.lock();
+        try {
+            startedOn = null;
+            closeSessions();
+        } finally {
+            lifecycleLock.unlock();
+        }
+    }
+
+    /**
+     * 關閉回應 consumer，並讓所有等待中的請求以錯誤結束
+     */
+    void stop(String reason) {
+        stopConsumers();
+
+        Iterator<Map.Entry<String, PendingReply>> pending = pendingReplies.entrySet().iterator();
+        while (pending.hasNext()) {
+            PendingReply pendingReply = pending.next().getValue();
+            pending.remove();
+            pendingReply.future.completeExceptionally(new JMSException(reason));
+        }
+        unmatchedReplies.clear();
+    }
+
+    private void closeSessions() {
+        for (Session session : sessions) {
+            try {
+                session.close();
+            } catch (JMSException e) {
+                logger.warn("關閉回應 consumer session 時發生錯誤: {}", e.getMessage());
+            }
+        }
+        sessions.clear();
+    }
+
+    private static class PendingReply {
+        private final CompletableFuture<Message> future = new CompletableFuture<>();
+        private final long deadline;
+
+        private PendingReply(long deadline) {
+            this.deadline = deadline;
+        }
+    }
+
+    private static class UnmatchedReply {
+        private final Message message;
+        private final long receivedAt;
+
+        private UnmatchedReply(Message message, long receivedAt) {
+            this.message = message;
+            this.receivedAt = receivedAt;
+        }
+    }
+}
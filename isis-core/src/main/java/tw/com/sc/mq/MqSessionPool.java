@@ -0,0 +1,260 @@
+package tw.com.sc.mq;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.DeliveryMode;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.Timer;
+import tw.com.sc.model.MqConfig;
+import tw.com.sc.mq.metrics.MqServiceMetrics;
+
+/**
+ * JMS Session / Producer 池
+ * JMS Session 不可同時被多個執行緒使用，因此每個執行緒需先借出一組 session 與 producer，用完再歸還。
+ * 最多建立 maxConnections 個連線，每個連線最多 maxSessionsPerConnection 個 session。
+ * 借出/歸還的路徑不使用 synchronized，避免 virtual thread 在建立 session 等待 MQ 時佔住 carrier thread。
+ */
+class MqSessionPool {
+
+    private final Logger logger = LoggerFactory.getLogger(MqSessionPool.class);
+
+    private final ConnectionFactory connectionFactory;
+    private final MqConfig mqConfig;
+    private final MqServiceMetrics mqServiceMetrics;
+    private final ExceptionListener exceptionListener;
+
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<MqPooledSession> idleSessions = new LinkedBlockingQueue<>();
+    private final Semaphore permits;
+    private final int capacity;
+    private final ReentrantLock createLock = new ReentrantLock();
+    /**
+     * 各連線上已建立的 session 數量，與 connections 的順序相同，由 createLock 保護
+     */
+    private final int[] sessionsPerConnection;
+    private int createdSessions = 0;
+
+    private Queue requestQueue;
+    private Queue responseQueue;
+    private volatile boolean closed = false;
+
+    MqSessionPool(ConnectionFactory connectionFactory, MqConfig mqConfig, MqServiceMetrics mqServiceMetrics,
+            ExceptionListener exceptionListener) {
+        this.connectionFactory = connectionFactory;
+        this.mqConfig = mqConfig;
+        this.mqServiceMetrics = mqServiceMetrics;
+        this.exceptionListener = exceptionListener;
+        this.capacity = Math.max(1, mqConfig.getMaxConnections()) * Math.max(1, mqConfig.getMaxSessionsPerConnection());
+        this.permits = new Semaphore(capacity, true);
+        this.sessionsPerConnection = new int[Math.max(1, mqConfig.getMaxConnections())];
+    }
+
+    /**
+     * 建立第一個連線並取得佇列物件，其餘連線在需要時才建立
+     */
+    void start() throws JMSException {
+        Connection connection = createConnection();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        try {
+            requestQueue = session.createQueue(mqConfig.getQueue().getRequest());
+            responseQueue = session.createQueue(mqConfig.getQueue().getResponse());
+        } finally {
+            session.close();
+        }
+        logger.info("MQ session pool 已建立，容量: {} ({} 連線 x {} session)", capacity,
+                mqConfig.getMaxConnections(), mqConfig.getMaxSessionsPerConnection());
+    }
+
+    Connection getPrimaryConnection() {
+        return connections.isEmpty() ? null : connections.get(0);
+    }
+
+    Queue getRequestQueue() {
+        return requestQueue;
+    }
+
+    Queue getResponseQueue() {
+        return responseQueue;
+    }
+
+    /**
+     * 借出一組 session，池已滿時最多等待 mq.sessionBorrowTimeout
+     */
+    MqPooledSession borrow() throws JMSException {
+        if (closed) {
+            throw new JMSException("MQ session pool 已關閉");
+        }
+
+        Timer.Sample sample = mqServiceMetrics.startSessionBorrowTimer();
+        try {
+            if (!permits.tryAcquire()) {
+                mqServiceMetrics.incrementSessionPoolExhausted();
+                if (!permits.tryAcquire(mqConfig.getSessionBorrowTimeout(), TimeUnit.MILLISECONDS)) {
+                    throw new JMSException("MQ session pool 已耗盡，等待逾時 " + mqConfig.getSessionBorrowTimeout() + " ms");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMSException("等待 MQ session 時被中斷");
+        } finally {
+            mqServiceMetrics.stopSessionBorrowTimer(sample);
+        }
+
+        MqPooledSession pooledSession = idleSessions.poll();
+        if (pooledSession != null) {
+            return pooledSession;
+        }
+
+        try {
+            return createPooledSession();
+        } catch (JMSException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 歸還 session，若 session 已損壞則直接關閉
+     */
+    void release(MqPooledSession pooledSession) {
+        if (closed || pooledSession.isBroken()) {
+            pooledSession.closeQuietly();
+            createLock.lock();
+            try {
+                createdSessions--;
+                sessionsPerConnection[pooledSession.getConnectionIndex()]--;
+            } finally {
+                createLock.unlock();
+            }
+        } else {
+            idleSessions.offer(pooledSession);
+        }
+        permits.release();
+    }
+
+    int getActiveCount() {
+        return capacity - permits.availablePermits();
+    }
+
+    int getIdleCount() {
+        return idleSessions.size();
+    }
+
+    int getConnectionCount() {
+        return connections.size();
+    }
+
+    void close() {
+        closed = true;
+        MqPooledSession pooledSession;
+        while ((pooledSession = idleSessions.poll()) != null) {
+            pooledSession.closeQuietly();
+        }
+        for (Connection connection : connections) {
+            try {
+                connection.close();
+            } catch (JMSException e) {
+                logger.warn("關閉MQ連線時發生錯誤: {}", e.getMessage());
+            }
+        }
+        connections.clear();
+    }
+
+    /**
+     * 在主要連線上建立 transacted session，不放回池中，由呼叫端自行 commit 與關閉
+     */
+    MqPooledSession createTransactedSession() throws JMSException {
+        Connection connection = getPrimaryConnection();
+        if (closed || connection == null) {
+            throw new JMSException("MQ session pool 已關閉");
+        }
+        Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
+        try {
+            return new MqPooledSession(null, -1, session, createProducer(session, requestQueue),
+                    createProducer(session, responseQueue));
+        } catch (JMSException e) {
+            session.close();
+            throw e;
+        }
+    }
+
+    private MqPooledSession createPooledSession() throws JMSException {
+        createLock.lock();
+        try {
+            int connectionIndex = selectConnection();
+            Connection connection = connectionIndex < connections.size()
+                    ? connections.get(connectionIndex)
+                    : createConnection();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer requestProducer;
+            MessageProducer responseProducer;
+            try {
+                requestProducer = createProducer(session, requestQueue);
+                responseProducer = createProducer(session, responseQueue);
+            } catch (JMSException e) {
+                session.close();
+                throw e;
+            }
+            createdSessions++;
+            sessionsPerConnection[connectionIndex]++;
+            logger.debug("建立新的 MQ session，目前數量: {}", createdSessions);
+            return new MqPooledSession(this, connectionIndex, session, requestProducer, responseProducer);
+        } finally {
+            createLock.unlock();
+        }
+    }
+
+    /**
+     * 選擇 session 數量最少且未達 maxSessionsPerConnection 的連線，都已滿時回傳下一個要建立的連線位置
+     * 損壞的 session 丟棄後，該連線會再補上新的 session
+     */
+    private int selectConnection() {
+        int maxSessions = Math.max(1, mqConfig.getMaxSessionsPerConnection());
+        int selected = -1;
+        for (int i = 0; i < connections.size(); i++) {
+            if (sessionsPerConnection[i] < maxSessions
+                    && (selected < 0 || sessionsPerConnection[i] < sessionsPerConnection[selected])) {
+                selected = i;
+            }
+        }
+        if (selected >= 0) {
+            return selected;
+        }
+        // permits 限制了 session 總數，所有連線都滿時一定還能建立新的連線
+        return connections.size();
+    }
+
+    private MessageProducer createProducer(Session session, Queue queue) throws JMSException {
+        MessageProducer producer = session.createProducer(queue);
+        producer.setTimeToLive(mqConfig.getConnectionTimeout());
+        producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        return producer;
+    }
+
+    private Connection createConnection() throws JMSException {
+        Connection connection = connectionFactory.createConnection();
+        // 連線中斷時由 ExceptionListener 通知，不需要靠心跳訊息偵測
+        connection.setExceptionListener(exceptionListener);
+        connection.start();
+        connections.add(connection);
+        logger.info("建立新的 MQ 連線，目前連線數: {}", connections.size());
+        return connection;
+    }
+}
@@ -0,0 +1,16 @@
+package tw.com.sc.mq;
+
+import javax.jms.JMSException;
+
+/**
+ * 查詢佇列目前深度 (CURDEPTH) 的方式
+ * IBM MQ 使用 {@link MqQueueDepthProvider} 直接向 queue manager 查詢；其他 JMS broker（如壓測用的內嵌 broker）可自行提供實作。
+ * 實作不可逐筆瀏覽訊息，佇列積壓時查詢成本必須維持不變。
+ */
+public interface QueueDepthProvider {
+
+    int getDepth(String queueName) throws JMSException;
+
+    default void close() {
+    }
+}
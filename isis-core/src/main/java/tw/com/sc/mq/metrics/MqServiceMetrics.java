@@ -1,10 +1,15 @@
 package tw.com.sc.mq.metrics;
 
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.springframework.stereotype.Component;
 
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
@@ -12,7 +17,10 @@ import io.micrometer.core.instrument.Timer;
 @Component
 public class MqServiceMetrics {
     private final Counter mqMessagesSentCounter;
-    private final Timer mqProcessingTimer;
+    /**
+     * mq.processing.time 依 queue manager 與結果分開的 timer
+     */
+    private final Map<String, Timer> mqProcessingTimers = new ConcurrentHashMap<>();
     private final Counter heartbeatFailedCounter;
     private long lastHeartbeatFailureTimestamp = 0;
     private long lastHeartbeatReceivedTimestamp = 0;
@@ -20,6 +28,20 @@ public class MqServiceMetrics {
     private long responseQueueSize = 0;
     private final MeterRegistry registry;
     private final Counter mqTimeouts;
+    private final Counter lateRepliesCounter;
+    private final Counter sessionPoolExhaustedCounter;
+    private final Timer sessionBorrowTimer;
+    private final Counter listenerBackpressureCounter;
+    private final Counter reconnectAttemptsCounter;
+    private final Counter reconnectParkedCounter;
+    private final Timer reconnectTimer;
+    private final DistributionSummary onewayBatchSize;
+    private final Timer onewayBatchLinger;
+    private final Counter onewayBatchRejectedCounter;
+    private final DistributionSummary listenerBatchSize;
+    private final Counter listenerBatchRollbackCounter;
+    private final Counter poisonBackoutCounter;
+    private final Counter poisonDiscardCounter;
 
     public MqServiceMetrics(MeterRegistry registry) {
         this.registry = registry;
@@ -28,10 +50,6 @@ public class MqServiceMetrics {
                 .description("message sent count")
                 .register(registry);
 
-        this.mqProcessingTimer = Timer.builder("mq.processing.time")
-                .description("MQ message processing time")
-                .register(registry);
-
         this.heartbeatFailedCounter = Counter.builder("mq.heartbeat.failed")
                 .description("heartbeat failed count")
                 .register(registry);
@@ -59,22 +77,126 @@ public class MqServiceMetrics {
                 .register(registry);
 
         this.mqTimeouts = registry.counter("mq.timeouts");
+
+        this.lateRepliesCounter = Counter.builder("mq.reply.late")
+                .description("replies received after the caller timed out")
+                .register(registry);
+
+        this.sessionPoolExhaustedCounter = Counter.builder("mq.session.pool.exhausted")
+                .description("session borrows that had to wait for a free session")
+                .register(registry);
+
+        this.sessionBorrowTimer = Timer.builder("mq.session.borrow.wait")
+                .description("time spent waiting to borrow a pooled session")
+                .register(registry);
+
+        this.listenerBackpressureCounter = Counter.builder("mq.listener.backpressure")
+                .description("times the request listener paused because all workers were busy")
+                .register(registry);
+
+        this.reconnectAttemptsCounter = Counter.builder("mq.reconnect.attempts")
+                .description("MQ reconnect attempts")
+                .register(registry);
+
+        this.reconnectParkedCounter = Counter.builder("mq.reconnect.parked")
+                .description("requests that waited for a reconnect instead of failing")
+                .register(registry);
+
+        this.reconnectTimer = Timer.builder("mq.reconnect.duration")
+                .description("time from losing the MQ connection to a new connection being ready")
+                .register(registry);
+
+        this.onewayBatchSize = DistributionSummary.builder("mq.batch.size")
+                .description("oneway messages committed per transaction")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1.0)
+                .maximumExpectedValue(10000.0)
+                .register(registry);
+
+        this.onewayBatchLinger = Timer.builder("mq.batch.linger")
+                .description("time from the first message of a batch being queued to the batch commit")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(10000))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+
+        this.onewayBatchRejectedCounter = Counter.builder("mq.batch.rejected")
+                .description("oneway messages rejected because too many were waiting for a batch")
+                .register(registry);
+
+        this.listenerBatchSize = DistributionSummary.builder("mq.listener.batch.size")
+                .description("request messages received and committed per listener transaction")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1.0)
+                .maximumExpectedValue(1000.0)
+                .register(registry);
+
+        this.listenerBatchRollbackCounter = Counter.builder("mq.listener.batch.rollback")
+                .description("listener transactions rolled back because replies could not be put or committed")
+                .register(registry);
+
+        this.poisonBackoutCounter = Counter.builder("mq.listener.poison")
+                .description("request messages that could not be processed")
+                .tag("action", "backout")
+                .register(registry);
+
+        this.poisonDiscardCounter = Counter.builder("mq.listener.poison")
+                .description("request messages that could not be processed")
+                .tag("action", "discard")
+                .register(registry);
     }
 
-    public Timer.Sample startRequestTimer() {
-        return Timer.start();
+    public void registerPendingRepliesGauge(Map<?, ?> pendingReplies, String queueManager) {
+        Gauge.builder("mq.reply.pending",
+                pendingReplies,
+                Map::size)
+                .description("two-way requests waiting for a reply")
+                .tag("qmgr", queueManager)
+                .register(registry);
     }
 
-    public void stopRequestTimer(Timer.Sample sample) {
-        sample.stop(mqProcessingTimer);
+    public void registerQueueManagerGauges(String queueManager, Supplier<Number> available,
+            Supplier<Number> outstanding) {
+        Gauge.builder("mq.qmgr.available", available)
+                .description("1 when the queue manager is connected and receiving requests, 0 otherwise")
+                .tag("qmgr", queueManager)
+                .register(registry);
+        Gauge.builder("mq.qmgr.outstanding", outstanding)
+                .description("borrowed sessions plus two-way requests waiting for a reply on the queue manager")
+                .tag("qmgr", queueManager)
+                .register(registry);
     }
 
     public void incrementMqMessagesSent() {
         mqMessagesSentCounter.increment();
     }
 
-    public void recordMqProcessingTime(long timeInMs) {
-        mqProcessingTimer.record(timeInMs, TimeUnit.MILLISECONDS);
+    /**
+     * 雙向交易從送出請求到收到回應（或逾時、失敗）的時間，result 為 success / timeout / error
+     */
+    public void recordMqProcessingTime(String queueManager, String result, long timeInNanos) {
+        mqProcessingTimer(queueManager, result).record(timeInNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 啟動時先建立各 queue manager 的 timer，尚無雙向交易（例如 adapter）時 mq.processing.time 也有資料
+     */
+    public void registerMqProcessingTimers(String queueManager, String... results) {
+        for (String result : results) {
+            mqProcessingTimer(queueManager, result);
+        }
+    }
+
+    private Timer mqProcessingTimer(String queueManager, String result) {
+        return mqProcessingTimers.computeIfAbsent(queueManager + '|' + result,
+                key -> Timer.builder("mq.processing.time")
+                        .description("time from sending a two-way request to receiving its reply")
+                        .tag("qmgr", queueManager)
+                        .tag("result", result)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(1))
+                        .maximumExpectedValue(Duration.ofMinutes(1))
+                        .register(registry));
     }
 
     public void incrementHeartbeatFailed() {
@@ -98,4 +220,82 @@ public class MqServiceMetrics {
         mqTimeouts.increment();
     }
 
+    public void registerSessionPoolGauges(Supplier<Number> active, Supplier<Number> idle,
+            Supplier<Number> connections) {
+        Gauge.builder("mq.session.pool.active", active)
+                .description("pooled sessions currently borrowed")
+                .register(registry);
+        Gauge.builder("mq.session.pool.idle", idle)
+                .description("pooled sessions currently idle")
+                .register(registry);
+        Gauge.builder("mq.session.pool.connections", connections)
+                .description("open MQ connections in the session pool")
+                .register(registry);
+    }
+
+    public void registerListenerGauge(Supplier<Number> inFlight) {
+        Gauge.builder("mq.listener.inflight", inFlight)
+                .description("request messages received and not yet processed")
+                .register(registry);
+    }
+
+    public void incrementListenerBackpressure() {
+        listenerBackpressureCounter.increment();
+    }
+
+    public Timer.Sample startSessionBorrowTimer() {
+        return Timer.start(registry);
+    }
+
+    public void stopSessionBorrowTimer(Timer.Sample sample) {
+        sample.stop(sessionBorrowTimer);
+    }
+
+    public void incrementSessionPoolExhausted() {
+        sessionPoolExhaustedCounter.increment();
+    }
+
+    public void incrementLateReplies() {
+        lateRepliesCounter.increment();
+    }
+
+    public void incrementReconnectAttempts() {
+        reconnectAttemptsCounter.increment();
+    }
+
+    public void incrementReconnectParked() {
+        reconnectParkedCounter.increment();
+    }
+
+    public void recordReconnectDuration(long timeInMs) {
+        reconnectTimer.record(timeInMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void registerOnewayBatchPendingGauge(Supplier<Number> pending) {
+        Gauge.builder("mq.batch.pending", pending)
+                .description("oneway messages waiting to be sent in a batch")
+                .register(registry);
+    }
+
+    public void recordOnewayBatch(int size, long lingerNanos) {
+        onewayBatchSize.record(size);
+        onewayBatchLinger.record(lingerNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void incrementOnewayBatchRejected() {
+        onewayBatchRejectedCounter.increment();
+    }
+
+    public void recordListenerBatch(int size) {
+        listenerBatchSize.record(size);
+    }
+
+    public void incrementListenerBatchRollback() {
+        listenerBatchRollbackCounter.increment();
+    }
+
+    public void incrementPoisonMessage(boolean backout) {
+        (backout ? poisonBackoutCounter : poisonDiscardCounter).increment();
+    }
+
 }
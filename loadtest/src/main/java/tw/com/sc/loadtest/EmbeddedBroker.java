@@ -0,0 +1,97 @@
+package tw.com.sc.loadtest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.jms.ConnectionFactory;
+
+import org.apache.activemq.artemis.api.core.SimpleString;
+import org.apache.activemq.artemis.core.config.Configuration;
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.remoting.impl.invm.InVMConnector;
+import org.apache.activemq.artemis.core.server.ActiveMQServer;
+import org.apache.activemq.artemis.core.server.Queue;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.apache.activemq.artemis.jms.client.ActiveMQConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 內嵌的 ActiveMQ Artemis broker，取代 IBM MQ
+ * 只提供 in-VM acceptor（vm://id），gateway 與 adapter 必須與 broker 在同一個 JVM 中執行。
+ * 模擬多個 queue manager 時每個 queue manager 啟動一個 broker，以不同的 id 區分。
+ */
+class EmbeddedBroker implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedBroker.class);
+
+    private static final Map<Integer, ActiveMQServer> runningServers = new ConcurrentHashMap<>();
+
+    private final int id;
+    private final EmbeddedActiveMQ server = new EmbeddedActiveMQ();
+
+    EmbeddedBroker(int id) {
+        this.id = id;
+    }
+
+    void start() throws Exception {
+        Path brokerInstance = Files.createTempDirectory("isis-loadtest-broker");
+        Configuration configuration = new ConfigurationImpl()
+                .setName("loadtest-broker-" + id)
+                .setPersistenceEnabled(false)
+                .setSecurityEnabled(false)
+                .setJMXManagementEnabled(false)
+                .addAcceptorConfiguration("in-vm", inVmUrl(id));
+        configuration.setBrokerInstance(brokerInstance.toFile());
+
+        server.setConfiguration(configuration);
+        server.start();
+        runningServers.put(id, server.getActiveMQServer());
+        logger.info("內嵌 JMS broker 已啟動: {}", inVmUrl(id));
+    }
+
+    private static String inVmUrl(int id) {
+        return "vm://" + id;
+    }
+
+    static ConnectionFactory createConnectionFactory(int id) {
+        return new ActiveMQConnectionFactory(inVmUrl(id));
+    }
+
+    /**
+     * 停止 broker 一段時間後再啟動，所有連線都會中斷
+     */
+    void outage(long millis) throws Exception {
+        logger.info("停止內嵌 JMS broker {} {} ms", inVmUrl(id), millis);
+        runningServers.remove(id);
+        server.stop();
+        Thread.sleep(millis);
+        server.start();
+        runningServers.put(id, server.getActiveMQServer());
+        logger.info("內嵌 JMS broker {} 已重新啟動", inVmUrl(id));
+    }
+
+    /**
+     * 各 broker 上此佇列目前的訊息數量總和，佇列尚未建立時為 0
+     */
+    static int queueDepth(String queueName) {
+        int depth = 0;
+        for (ActiveMQServer activeServer : runningServers.values()) {
+            Queue queue = activeServer.locateQueue(SimpleString.toSimpleString(queueName));
+            depth += queue == null ? 0 : (int) queue.getMessageCount();
+        }
+        return depth;
+    }
+
+    @Override
+    public void close() throws Exception {
+        runningServers.remove(id);
+        server.stop();
+        if (runningServers.isEmpty()) {
+            // in-VM connector 共用的執行緒不是 daemon，全部 broker 停止後關閉，壓測結束時 JVM 才能正常結束
+            InVMConnector.resetThreadPool();
+        }
+    }
+}
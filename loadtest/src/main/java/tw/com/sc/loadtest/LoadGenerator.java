@@ -0,0 +1,135 @@
+package tw.com.sc.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import tw.com.sc.model.txmsg.TandemMessageHelper;
+import tw.com.sc.model.txmsg.TandemMessageRequest;
+import tw.com.sc.model.txmsg.TandemMessageResponse;
+
+/**
+ * 以固定速率（open-loop）呼叫 gateway 的交易 API
+ * 請求依預定時間送出，不等待前一筆完成，較能反映實際流量下的排隊延遲。
+ */
+class LoadGenerator {
+
+    private final HttpClient httpClient;
+    private final URI uri;
+    private final LoadTestOptions options;
+    private final String clientId;
+    private final String clientSecret;
+    private final String payload;
+    // 只在送出請求的執行緒上使用
+    private String lastSessionId;
+
+    LoadGenerator(HttpClient httpClient, URI uri, LoadTestOptions options, String clientId, String clientSecret) {
+        this.httpClient = httpClient;
+        this.uri = uri;
+        this.options = options;
+        this.clientId = Base64.getEncoder().encodeToString(clientId.getBytes(StandardCharsets.UTF_8));
+        this.clientSecret = Base64.getEncoder().encodeToString(clientSecret.getBytes(StandardCharsets.UTF_8));
+        this.payload = "X".repeat(Math.max(0, options.getPayloadSize()));
+    }
+
+    /**
+     * 以 options.rate 的速率送出請求 seconds 秒，並等待所有請求完成
+     */
+    LoadTestReport run(String name, int seconds) throws InterruptedException {
+        LoadTestReport report = new LoadTestReport(name);
+        Semaphore inFlight = new Semaphore(options.getMaxInFlight());
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / options.getRate();
+        long total = (long) options.getRate() * seconds;
+
+        report.start();
+        long startNanos = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long intendedNanos = startNanos + i * intervalNanos;
+            long waitNanos = intendedNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+
+            report.recordSent();
+            if (!inFlight.tryAcquire()) {
+                report.recordRejected();
+                continue;
+            }
+
+            try {
+                httpClient.sendAsync(buildRequest(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                        .whenComplete((response, error) -> {
+                            try {
+                                report.recordResult(resultCodeOf(response, error), System.nanoTime() - intendedNanos);
+                            } finally {
+                                inFlight.release();
+                            }
+                        });
+            } catch (RuntimeException e) {
+                inFlight.release();
+                report.recordResult(resultCodeOf(null, e), System.nanoTime() - intendedNanos);
+            }
+        }
+
+        // 等待進行中的請求完成
+        if (inFlight.tryAcquire(options.getMaxInFlight(), 60, TimeUnit.SECONDS)) {
+            inFlight.release(options.getMaxInFlight());
+        }
+        report.finish();
+        return report;
+    }
+
+    private HttpRequest buildRequest() {
+        TandemMessageRequest request = new TandemMessageRequest();
+        request.setClientId(clientId);
+        request.setClientSecret(clientSecret);
+        TandemMessageRequest.MsgInData msgInData = new TandemMessageRequest.MsgInData();
+        if (lastSessionId == null || ThreadLocalRandom.current().nextDouble() >= options.getDuplicateRatio()) {
+            lastSessionId = UUID.randomUUID().toString();
+        }
+        msgInData.setMsgSessionId(lastSessionId);
+        msgInData.setMsgStrnkeyNo(options.getStrnkey());
+        msgInData.setMsgFiller("");
+        msgInData.setMsgReturnCode("");
+        msgInData.setMsgTimeSeq(String.valueOf(System.currentTimeMillis()));
+        msgInData.setMsgTranDirection("I");
+        msgInData.setMsgLength(String.valueOf(payload.length()));
+        msgInData.setMsgInMsgData(payload);
+        request.setMsgInData(msgInData);
+
+        return HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofSeconds(60))
+                .header("Content-Type", "application/json;charset=UTF-8")
+                .POST(HttpRequest.BodyPublishers.ofString(TandemMessageHelper.RequestSerializer.toJson(request),
+                        StandardCharsets.UTF_8))
+                .build();
+    }
+
+    /**
+     * 以 IS-RESULT-CODE 分類結果，無法解析時以 HTTP 狀態碼或例外類別分類
+     */
+    private static String resultCodeOf(HttpResponse<String> response, Throwable error) {
+        if (error != null) {
+            Throwable cause = error.getCause() != null ? error.getCause() : error;
+            return "EXCEPTION:" + cause.getClass().getSimpleName();
+        }
+        try {
+            TandemMessageResponse body = TandemMessageHelper.ResponseSerializer.fromJson(response.body());
+            if (body != null && body.getResultCode() != null) {
+                return body.getResultCode();
+            }
+        } catch (RuntimeException e) {
+            // 非 JSON 的回應，改以 HTTP 狀態碼分類
+        }
+        return "HTTP:" + response.statusCode();
+    }
+}
@@ -0,0 +1,165 @@
+package tw.com.sc.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import tw.com.sc.ServiceGateway;
+import tw.com.sc.TandemServiceAdapter;
+
+/**
+ * gateway → MQ → adapter → Tandem 的端對端壓測
+ * 在同一個 JVM 中啟動內嵌 JMS broker、Tandem stub、tandem-adapter 與 service-gateway，
+ * 依序對每個 handler（twoway / oneway）以固定速率呼叫交易 API，輸出 p50/p99/p999 延遲、吞吐量與結果代碼。
+ *
+ * 執行方式:
+ *   mvn -B -pl loadtest -am package -DskipTests
+ *   java -jar loadtest/target/loadtest.jar rate=500 duration=60 tandemLatency=20 --mq.listener.concurrency=50
+ * 模擬 queue manager 切換: outageAt=10 outageDuration=3000 --mq.reconnect.parkTimeout=5000
+ * 多個 queue manager: queueManagers=2 --mq.loadBalancing=least-outstanding，搭配 outageAt 時只停止第一個
+ */
+public class LoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+
+    private static final String CLIENT_ID = "loadtest-client";
+    private static final String CLIENT_SECRET = "loadtest-secret";
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        StringBuilder summary = new StringBuilder();
+
+        List<EmbeddedBroker> brokers = new ArrayList<>();
+        try (StubTandemServer tandemServer = new StubTandemServer(options.getTandemLatency(),
+                options.getTandemJitter())) {
+            for (int i = 0; i < options.getQueueManagers(); i++) {
+                EmbeddedBroker broker = new EmbeddedBroker(i);
+                brokers.add(broker);
+                broker.start();
+            }
+            tandemServer.start();
+
+            try (ConfigurableApplicationContext adapter = startAdapter(options, tandemServer)) {
+                HttpClient httpClient = HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .connectTimeout(Duration.ofSeconds(5))
+                        .build();
+
+                for (String handler : options.getHandlers()) {
+                    try (ConfigurableApplicationContext gateway = startGateway(options, handler)) {
+                        URI uri = URI.create("http://127.0.0.1:" + localPort(gateway) + "/api/v1/" + options.getEndpoint());
+                        LoadGenerator generator = new LoadGenerator(httpClient, uri, options, CLIENT_ID, CLIENT_SECRET);
+
+                        String name = String.format("%s %s rate=%d/s", handler, options.getEndpoint(), options.getRate());
+                        if (options.getWarmup() > 0) {
+                            logger.info("[{}] 暖機 {} 秒", name, options.getWarmup());
+                            generator.run(name, options.getWarmup());
+                        }
+                        logger.info("[{}] 量測 {} 秒", name, options.getDuration());
+                        Thread outage = scheduleOutage(brokers.get(0), options);
+                        LoadTestReport report = generator.run(name, options.getDuration());
+                        if (outage != null) {
+                            outage.join();
+                        }
+                        logger.info(report.format());
+                        summary.append(report.format());
+                    }
+                }
+            }
+
+            logger.info("Tandem stub 共收到 {} 筆請求", tandemServer.getRequestCount());
+        } finally {
+            for (EmbeddedBroker broker : brokers) {
+                broker.close();
+            }
+        }
+
+        logger.info("壓測結果:{}", summary);
+    }
+
+    /**
+     * 量測期間於 outageAt 秒時停止 broker outageDuration 毫秒，觀察重新連線期間的錯誤與恢復時間
+     */
+    private static Thread scheduleOutage(EmbeddedBroker broker, LoadTestOptions options) {
+        if (options.getOutageAt() <= 0) {
+            return null;
+        }
+        Thread outage = new Thread(() -> {
+            try {
+                Thread.sleep(options.getOutageAt() * 1000L);
+                broker.outage(options.getOutageDuration());
+            } catch (Exception e) {
+                logger.error("模擬 broker 中斷失敗", e);
+            }
+        }, "loadtest-outage");
+        outage.setDaemon(true);
+        outage.start();
+        return outage;
+    }
+
+    private static ConfigurableApplicationContext startAdapter(LoadTestOptions options, StubTandemServer tandemServer) {
+        Map<String, Object> properties = commonProperties(options);
+        properties.put("spring.application.name", "loadtest-tandem-adapter");
+        properties.put("tandem.api.url", tandemServer.getUrl());
+        properties.put("tandem.api.username", "tandem");
+        properties.put("tandem.api.password", "tandem");
+        properties.put("filters.strnkeys", "");
+
+        return new SpringApplicationBuilder(TandemServiceAdapter.class, LoadTestMqConfiguration.class)
+                .initializers(ModuleExcludeFilter.excluding(ServiceGateway.class))
+                .properties(properties)
+                .run(options.getSpringArgs().toArray(String[]::new));
+    }
+
+    private static ConfigurableApplicationContext startGateway(LoadTestOptions options, String handler) {
+        Map<String, Object> properties = commonProperties(options);
+        properties.put("spring.application.name", "loadtest-service-gateway");
+        properties.put("transaction.message-handler", handler);
+        properties.put("clients[0].id", CLIENT_ID);
+        properties.put("clients[0].secret", CLIENT_SECRET);
+        properties.put("management.endpoints.web.exposure.include", "health,metrics");
+
+        return new SpringApplicationBuilder(ServiceGateway.class, LoadTestMqConfiguration.class)
+                .initializers(ModuleExcludeFilter.excluding(TandemServiceAdapter.class))
+                .properties(properties)
+                .run(options.getSpringArgs().toArray(String[]::new));
+    }
+
+    /**
+     * 與 dev/mq-settings.yml 相同的 MQ 設定，改用內嵌 broker；請求與回應同樣共用一個佇列
+     */
+    private static Map<String, Object> commonProperties(LoadTestOptions options) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("spring.main.banner-mode", "off");
+        properties.put("spring.main.log-startup-info", "false");
+        properties.put("server.port", "0");
+        properties.put("mq.provider", "embedded");
+        properties.put("mq.queue.request", "LOADTEST.Q1");
+        properties.put("mq.queue.response", "LOADTEST.Q1");
+        properties.put("mq.ccsid", "1208");
+        properties.put("mq.heartbeatInterval", "2000");
+        properties.put("mq.transactionExpiry", "30000");
+        properties.put("mq.responseWaitInterval", "10000");
+        properties.put("mq.connectionTimeout", "30000");
+        if (options.getQueueManagers() > 1) {
+            for (int i = 0; i < options.getQueueManagers(); i++) {
+                properties.put("mq.queueManagers[" + i + "].name", "QM" + i);
+                properties.put("mq.queueManagers[" + i + "].host", String.valueOf(i));
+            }
+        }
+        return properties;
+    }
+
+    private static int localPort(ConfigurableApplicationContext context) {
+        return context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+    }
+}
@@ -0,0 +1,32 @@
+package tw.com.sc.loadtest;
+
+import javax.jms.ConnectionFactory;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import tw.com.sc.mq.MqConnectionFactoryResolver;
+import tw.com.sc.mq.QueueDepthProvider;
+
+/**
+ * 壓測時提供給 MqConnectionManager 的 ConnectionFactory 與佇列深度查詢，需搭配 mq.provider=embedded
+ * mq.queueManagers[n].host 為內嵌 broker 的 id
+ */
+@Configuration
+public class LoadTestMqConfiguration {
+
+    @Bean
+    public ConnectionFactory loadTestConnectionFactory() {
+        return EmbeddedBroker.createConnectionFactory(0);
+    }
+
+    @Bean
+    public MqConnectionFactoryResolver loadTestConnectionFactoryResolver() {
+        return queueManager -> EmbeddedBroker.createConnectionFactory(Integer.parseInt(queueManager.getHost()));
+    }
+
+    @Bean
+    public QueueDepthProvider loadTestQueueDepthProvider() {
+        return EmbeddedBroker::queueDepth;
+    }
+}
@@ -0,0 +1,69 @@
+package tw.com.sc.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * 壓測參數，以 key=value 形式傳入，例如: rate=500 duration=60 handlers=twoway
+ * 以 -- 開頭的參數（如 --mq.listener.concurrency=50）會原樣傳給 gateway 與 adapter 的 Spring context。
+ */
+@Data
+class LoadTestOptions {
+    private int rate = 100;                  // 每秒送出的請求數
+    private int duration = 30;               // 量測時間(單位為 seconds)
+    private int warmup = 5;                  // 暖機時間，不列入統計(單位為 seconds)
+    private List<String> handlers = List.of("twoway", "oneway");
+    private String endpoint = "submitTransaction"; // submitTransaction 或 submitTransactionAsync
+    private int maxInFlight = 2000;          // 同時等待回應的請求上限，超過時該請求記為 CLIENT_REJECTED
+    private int payloadSize = 256;           // MSG-IN-MSG-DATA 長度
+    private String strnkey = "30011002";
+    private long tandemLatency = 20;         // Tandem stub 的回應延遲(單位為 milliseconds)
+    private long tandemJitter = 0;           // 額外的隨機延遲上限(單位為 milliseconds)
+    private int queueManagers = 1;           // 內嵌 broker 數量，大於 1 時以 mq.queueManagers 同時連線
+    private int outageAt = 0;                // 量測開始後第幾秒停止第一個 broker，模擬 queue manager 切換，0 表示不停止
+    private long outageDuration = 3000;      // broker 停止的時間(單位為 milliseconds)
+    private double duplicateRatio = 0;       // 以前一筆請求的 MSG-SESSION-ID 重送的比例，模擬呼叫端逾時後重送
+    private List<String> springArgs = new ArrayList<>();
+
+    static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                options.springArgs.add(arg);
+                continue;
+            }
+
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("參數格式應為 key=value: " + arg);
+            }
+            String key = arg.substring(0, separator);
+            String value = arg.substring(separator + 1);
+            switch (key) {
+                case "rate" -> options.rate = Integer.parseInt(value);
+                case "duration" -> options.duration = Integer.parseInt(value);
+                case "warmup" -> options.warmup = Integer.parseInt(value);
+                case "handlers" -> options.handlers = Arrays.asList(value.split(","));
+                case "endpoint" -> options.endpoint = value;
+                case "maxInFlight" -> options.maxInFlight = Integer.parseInt(value);
+                case "payloadSize" -> options.payloadSize = Integer.parseInt(value);
+                case "strnkey" -> options.strnkey = value;
+                case "tandemLatency" -> options.tandemLatency = Long.parseLong(value);
+                case "tandemJitter" -> options.tandemJitter = Long.parseLong(value);
+                case "queueManagers" -> options.queueManagers = Integer.parseInt(value);
+                case "outageAt" -> options.outageAt = Integer.parseInt(value);
+                case "outageDuration" -> options.outageDuration = Long.parseLong(value);
+                case "duplicateRatio" -> options.duplicateRatio = Double.parseDouble(value);
+                default -> throw new IllegalArgumentException("未知的參數: " + key);
+            }
+        }
+
+        if (options.rate <= 0 || options.duration <= 0 || options.maxInFlight <= 0 || options.queueManagers <= 0) {
+            throw new IllegalArgumentException("rate、duration、maxInFlight 與 queueManagers 必須大於 0");
+        }
+        return options;
+    }
+}
@@ -0,0 +1,73 @@
+package tw.com.sc.loadtest;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * 單一情境的壓測結果
+ * 延遲由「預定送出時間」起算，送出端落後時的排隊時間也會計入，避免 coordinated omission 低估尾端延遲。
+ */
+class LoadTestReport {
+
+    static final String CLIENT_REJECTED = "CLIENT_REJECTED";
+
+    private final String name;
+    private final Histogram latencyMicros = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3);
+    private final Map<String, LongAdder> resultCodes = new ConcurrentHashMap<>();
+    private final LongAdder sent = new LongAdder();
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    LoadTestReport(String name) {
+        this.name = name;
+    }
+
+    void start() {
+        startNanos = System.nanoTime();
+    }
+
+    void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    void recordSent() {
+        sent.increment();
+    }
+
+    void recordRejected() {
+        resultCodes.computeIfAbsent(CLIENT_REJECTED, key -> new LongAdder()).increment();
+    }
+
+    void recordResult(String resultCode, long latencyNanos) {
+        latencyMicros.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos),
+                latencyMicros.getHighestTrackableValue()));
+        resultCodes.computeIfAbsent(resultCode, key -> new LongAdder()).increment();
+    }
+
+    String format() {
+        double elapsedSeconds = Math.max(1, endNanos - startNanos) / 1_000_000_000.0;
+        long completed = latencyMicros.getTotalCount();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%n===== %s =====%n", name));
+        sb.append(String.format("送出: %d，完成: %d，耗時: %.1f s，吞吐量: %.1f req/s%n",
+                sent.sum(), completed, elapsedSeconds, completed / elapsedSeconds));
+        sb.append(String.format("延遲(ms) p50=%.2f p90=%.2f p99=%.2f p999=%.2f max=%.2f%n",
+                percentileMillis(50), percentileMillis(90), percentileMillis(99), percentileMillis(99.9),
+                latencyMicros.getMaxValue() / 1000.0));
+        sb.append("結果代碼:");
+        new TreeMap<>(resultCodes).forEach((code, count) -> sb.append(' ').append(code).append('=').append(count.sum()));
+        sb.append(System.lineSeparator());
+        return sb.toString();
+    }
+
+    private double percentileMillis(double percentile) {
+        return latencyMicros.getValueAtPercentile(percentile) / 1000.0;
+    }
+}
@@ -0,0 +1,58 @@
+package tw.com.sc.loadtest;
+
+import java.util.Objects;
+
+import org.springframework.boot.context.TypeExcludeFilter;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.util.ClassUtils;
+
+/**
+ * 排除另一個應用程式模組的類別
+ * service-gateway 與 tandem-adapter 的主程式都掃描 tw.com.sc，放在同一個 classpath 時會互相掃到對方的 bean，
+ * 因此依類別所在的 jar / classes 目錄，把另一個模組的類別排除。
+ */
+class ModuleExcludeFilter extends TypeExcludeFilter {
+
+    private final String excludedLocation;
+
+    ModuleExcludeFilter(Class<?> excludedModuleClass) {
+        this.excludedLocation = locationOf(excludedModuleClass);
+    }
+
+    /**
+     * 在元件掃描之前註冊 filter，Spring Boot 的 TypeExcludeFilter 會找出 context 中所有此型別的 bean
+     */
+    static ApplicationContextInitializer<ConfigurableApplicationContext> excluding(Class<?> excludedModuleClass) {
+        ModuleExcludeFilter filter = new ModuleExcludeFilter(excludedModuleClass);
+        return context -> context.getBeanFactory().registerSingleton(
+                ModuleExcludeFilter.class.getName(), filter);
+    }
+
+    @Override
+    public boolean match(MetadataReader metadataReader, MetadataReaderFactory metadataReaderFactory) {
+        String className = metadataReader.getClassMetadata().getClassName();
+        try {
+            Class<?> type = ClassUtils.forName(className, getClass().getClassLoader());
+            return excludedLocation.equals(locationOf(type));
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static String locationOf(Class<?> type) {
+        return String.valueOf(type.getProtectionDomain().getCodeSource().getLocation());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof ModuleExcludeFilter other && excludedLocation.equals(other.excludedLocation);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(excludedLocation);
+    }
+}
@@ -0,0 +1,114 @@
+package tw.com.sc.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import tw.com.sc.model.txmsg.TandemMessage;
+import tw.com.sc.model.txmsg.TandemMessageSerializer;
+
+/**
+ * 模擬 Tandem API 的 HTTP 服務
+ * 將收到的電文原樣回傳並設定成功代碼，回應前等待 latency + 0~jitter 毫秒以模擬主機處理時間。
+ */
+class StubTandemServer implements AutoCloseable {
+
+    static final String PATH = "/api/v1/tandem";
+
+    private static final Logger logger = LoggerFactory.getLogger(StubTandemServer.class);
+
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    StubTandemServer(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+    }
+
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        // 每個請求都會 sleep 模擬延遲，使用不限數量的執行緒避免 stub 本身成為瓶頸
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext(PATH, this::handle);
+        server.start();
+        logger.info("Tandem stub 已啟動: {}，延遲 {} ms (+0~{} ms)", getUrl(), latencyMillis, jitterMillis);
+    }
+
+    String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + PATH;
+    }
+
+    long getRequestCount() {
+        return requestCount.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requestCount.incrementAndGet();
+            String body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+
+            simulateLatency();
+
+            TandemMessage tandemMessage = TandemMessageSerializer.fromJson(body);
+            if (tandemMessage == null || tandemMessage.getMsgInData() == null) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            tandemMessage.getMsgInData().setMsgReturnCode(TandemMessage.DEFAULT_SUCCESS_CODE);
+            tandemMessage.getMsgInData().setMsgTranDirection("O");
+
+            byte[] response = TandemMessageSerializer.toJson(tandemMessage).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Tandem stub 處理請求時發生錯誤: {}", e.getMessage());
+            throw e;
+        }
+    }
+
+    private void simulateLatency() {
+        long delay = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        if (delay <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
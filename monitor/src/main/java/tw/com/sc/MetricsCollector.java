@@ -127,6 +127,11 @@ public class MetricsCollector {
                         .build();
 
                 HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+                // 尚未建立的指標回應 404，略過不解析
+                if (response.statusCode() != 200) {
+                    log.warn("從 {} 獲取指標 {} 失敗，HTTP 狀態碼: {}", endpoint, item, response.statusCode());
+                    continue;
+                }
                 result.append(response.body()).append("\n");
             } catch (Exception e) {
                 log.error("從 {} 獲取指標 {} 時發生錯誤: {}", endpoint, item, e.getMessage());
@@ -173,12 +178,21 @@ public class MetricsCollector {
      * @param detail 要填入數據的 MetrixDetail 物件
      */
     private void parseMetricsToDetail(String metricsData, MetrixDetail detail) {
-        try {
-            String[] metrics = metricsData.split("\n");
-            for (String metric : metrics) {
+        String[] metrics = metricsData.split("\n");
+        for (String metric : metrics) {
+            if (metric.isBlank()) {
+                continue;
+            }
+            // 單一指標解析失敗時只略過該指標，不影響其他指標
+            try {
                 JsonNode node = objectMapper.readTree(metric);
-                String name = node.get("name").asText();
+                JsonNode nameNode = node.get("name");
                 JsonNode measurements = node.get("measurements");
+                if (nameNode == null || measurements == null) {
+                    log.warn("略過格式不正確的指標數據: {}", metric);
+                    continue;
+                }
+                String name = nameNode.asText();
                 
                 switch (name) {
                     case "api.request.latency":  // API 請求延遲時間
@@ -215,9 +229,9 @@ public class MetricsCollector {
                         detail.getMq().setResponseTimeoutsCount(getMetricValue(measurements, "COUNT"));
                         break;
                 }
+            } catch (Exception e) {
+                log.error("解析指標數據時發生錯誤: {}", metric, e);
             }
-        } catch (Exception e) {
-            log.error("解析指標數據時發生錯誤", e);
         }
     }
 
@@ -229,7 +243,7 @@ public class MetricsCollector {
      */
     private String getMetricValue(JsonNode measurements, String statistic) {
         for (JsonNode measurement : measurements) {
-            if (measurement.get("statistic").asText().equals(statistic)) {
+            if (statistic.equals(measurement.path("statistic").asText())) {
                 return measurement.get("value").asText();
             }
         }
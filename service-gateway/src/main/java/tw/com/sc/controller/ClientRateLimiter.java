@@ -0,0 +1,156 @@
+package tw.com.sc.controller;
+
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import tw.com.sc.metrics.ApiServiceMetrics;
+import tw.com.sc.model.ClientSettings;
+
+/**
+ * 依 client-settings.yml 的 rateLimit / burst / maxConcurrent 限制各用戶端的交易量
+ * 每個用戶端各自計數，彼此不競爭；判斷只用 CAS，不使用 lock，避免單一用戶端大量送出時拖慢其他用戶端。
+ */
+@Component
+public class ClientRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClientRateLimiter.class);
+
+    // 啟動後不再變動，查詢時不需同步
+    private final Map<String, ClientQuota> quotas = new HashMap<>();
+
+    @Autowired
+    public ClientRateLimiter(ClientSettings clientSettings, ApiServiceMetrics metrics) {
+        this(clientSettings, metrics, System::nanoTime);
+    }
+
+    ClientRateLimiter(ClientSettings clientSettings, ApiServiceMetrics metrics, LongSupplier nanoClock) {
+        // 與 ClientValidator 相同，以 base64(clientId) 作為 key
+        clientSettings.getClients().forEach(client -> {
+            ClientQuota quota = new ClientQuota(client, metrics, nanoClock);
+            quotas.put(Base64.getEncoder().encodeToString(client.getId().getBytes()), quota);
+            if (client.getRateLimit() > 0 || client.getMaxConcurrent() > 0) {
+                logger.info("用戶端 {} 交易量限制: 每秒 {} 筆 (burst {})，同時 {} 筆", client.getId(),
+                        client.getRateLimit(), quota.burst, client.getMaxConcurrent());
+            }
+        });
+    }
+
+    /**
+     * 取得一筆交易的額度，成功時回傳 true，交易結束後必須呼叫 release
+     */
+    public boolean tryAcquire(String clientId) {
+        ClientQuota quota = quotas.get(clientId);
+        return quota == null || quota.tryAcquire();
+    }
+
+    public void release(String clientId) {
+        ClientQuota quota = quotas.get(clientId);
+        if (quota != null) {
+            quota.release();
+        }
+    }
+
+    private static class ClientQuota {
+        private final String clientId;
+        /**
+         * 每筆交易佔用的時間，0 表示不限制頻率
+         */
+        private final long emissionIntervalNanos;
+        private final long burstToleranceNanos;
+        private final int burst;
+        private final int maxConcurrent;
+        private final LongSupplier nanoClock;
+
+        /**
+         * token bucket 以下一筆交易的理論到達時間 (GCRA) 表示，只需一個 AtomicLong
+         */
+        private final AtomicLong theoreticalArrival;
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final Counter acceptedCounter;
+        private final Counter rateLimitedCounter;
+        private final Counter concurrencyLimitedCounter;
+
+        private ClientQuota(ClientSettings.Client client, ApiServiceMetrics metrics, LongSupplier nanoClock) {
+            this.clientId = client.getId();
+            this.nanoClock = nanoClock;
+            this.theoreticalArrival = new AtomicLong(nanoClock.getAsLong());
+            this.emissionIntervalNanos = client.getRateLimit() > 0
+                    ? (long) (TimeUnit.SECONDS.toNanos(1) / client.getRateLimit())
+                    : 0;
+            this.burst = client.getBurst() > 0 ? client.getBurst() : Math.max(1, (int) Math.ceil(client.getRateLimit()));
+            this.burstToleranceNanos = emissionIntervalNanos * (burst - 1);
+            this.maxConcurrent = client.getMaxConcurrent();
+
+            this.acceptedCounter = metrics.clientRequestsCounter(clientId, "accepted");
+            this.rateLimitedCounter = metrics.clientRequestsCounter(clientId, "rate_limited");
+            this.concurrencyLimitedCounter = metrics.clientRequestsCounter(clientId, "concurrency_limited");
+            metrics.registerClientInFlightGauge(clientId, inFlight::get);
+        }
+
+        private boolean tryAcquire() {
+            if (!tryAcquireConcurrency()) {
+                concurrencyLimitedCounter.increment();
+                logger.debug("用戶端 {} 同時處理中的交易已達上限 {}", clientId, maxConcurrent);
+                return false;
+            }
+            if (!tryAcquireRate()) {
+                inFlight.decrementAndGet();
+                rateLimitedCounter.increment();
+                logger.debug("用戶端 {} 超過每秒交易量限制", clientId);
+                return false;
+            }
+            acceptedCounter.increment();
+            return true;
+        }
+
+        private boolean tryAcquireConcurrency() {
+            if (maxConcurrent <= 0) {
+                inFlight.incrementAndGet();
+                return true;
+            }
+            while (true) {
+                int current = inFlight.get();
+                if (current >= maxConcurrent) {
+                    return false;
+                }
+                if (inFlight.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private boolean tryAcquireRate() {
+            if (emissionIntervalNanos == 0) {
+                return true;
+            }
+            long now = nanoClock.getAsLong();
+            while (true) {
+                long arrival = theoreticalArrival.get();
+                // 累積的額度用完（理論到達時間超前現在太多）
+                if (arrival - now > burstToleranceNanos) {
+                    return false;
+                }
+                long next = (arrival - now > 0 ? arrival : now) + emissionIntervalNanos;
+                if (theoreticalArrival.compareAndSet(arrival, next)) {
+                    return true;
+                }
+            }
+        }
+
+        private void release() {
+            inFlight.decrementAndGet();
+        }
+    }
+}
@@ -22,7 +22,7 @@ public class SystemMetricsController {
 
     private final MetricsEndpoint metricsEndpoint;
     private final List<String> metricsNames = Arrays.asList("api.requests.total", "api.request.latency",
-            "api.request.error", "application.started.time", "jvm.memory.max", "jvm.memory.used", "mq.heartbeat.last.sent.timestamp", "mq.heartbeat.last.failure.timestamp",
+            "api.request.error", "api.requests.inflight", "application.started.time", "jvm.memory.max", "jvm.memory.used", "mq.heartbeat.last.sent.timestamp", "mq.heartbeat.last.failure.timestamp",
             "mq.heartbeat.failed", "mq.queue.size", "mq.queue.request.size", "mq.queue.response.size");
 
     public SystemMetricsController(MetricsEndpoint metricsEndpoint) {
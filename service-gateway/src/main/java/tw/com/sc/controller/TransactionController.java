@@ -1,6 +1,7 @@
 package tw.com.sc.controller;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,86 +27,198 @@ public class TransactionController {
     private final TransactionDispatcher transactionDispatcher;
     private final ApiServiceMetrics metrics;
     private final ClientValidator clientValidator;
+    private final ClientRateLimiter clientRateLimiter;
 
     private static final Logger logger = LoggerFactory.getLogger(TransactionController.class);
 
     public TransactionController(TransactionDispatcher transactionManager, ApiServiceMetrics metrics,
-            ClientValidator clientValidator) {
+            ClientValidator clientValidator, ClientRateLimiter clientRateLimiter) {
         this.transactionDispatcher = transactionManager;
         this.metrics = metrics;
         this.clientValidator = clientValidator;
+        this.clientRateLimiter = clientRateLimiter;
     }
 
     @PostMapping(value = "/api/v1/submitTransaction", produces = "application/json;charset=UTF-8", consumes = "application/json;charset=UTF-8")
     public ResponseEntity<TandemMessageResponse> submitTransaction(@RequestBody TandemMessageRequest apiRequest) {
         metrics.incrementTotalRequests();
+        metrics.incrementInFlightRequests();
         Sample timer = metrics.startRequestTimer();
-        boolean isSuccess = false;
+        ResponseEntity<TandemMessageResponse> apiResponse = null;
 
         try {
+            apiResponse = processTransaction(apiRequest);
+            return apiResponse;
+        } finally {
+            recordLatency(timer, apiRequest, apiResponse);
+            metrics.decrementInFlightRequests();
+        }
+    }
 
-            // 驗證 clientId 和 clientSecret
-            if (!clientValidator.validate(apiRequest.getClientId(), apiRequest.getClientSecret())) {
-                return ResponseEntity
-                        .status(HttpStatus.UNAUTHORIZED)
-                        .body(buildErrorResponse(apiRequest, ReturnCode.UNAUTHORIZED.getCode(),
-                                ReturnCode.UNAUTHORIZED.getMessage()));
-            }
+    private ResponseEntity<TandemMessageResponse> processTransaction(TandemMessageRequest apiRequest) {
+        boolean isSuccess = false;
 
-            if (apiRequest.getMsgInData() == null) {
-                return ResponseEntity
-                        .status(HttpStatus.BAD_REQUEST)
-                        .body(buildErrorResponse(apiRequest, ReturnCode.BAD_REQUEST.getCode(),
-                                ReturnCode.BAD_REQUEST.getMessage()));
-            }
+        try {
 
-            // 如果沒有 sessionId 則產生一個， 以便於後續追蹤
-            if (apiRequest.getMsgInData().getMsgSessionId() == null) {
-                apiRequest.getMsgInData().setMsgSessionId(UUID.randomUUID().toString());
+            ResponseEntity<TandemMessageResponse> invalidResponse = validateRequest(apiRequest);
+            if (invalidResponse != null) {
+                return invalidResponse;
             }
-
-            // 將交易轉發到 Tandem Adapter
-            logger.info("API 收到請求 sessionId: {}", apiRequest.getMsgInData().getMsgSessionId());
-            TandemMessageResponse response = transactionDispatcher.forwardRequest(apiRequest);
-            isSuccess = true;
-
-
-            // 如果 ISIS 處理失敗，則回傳 502
-            if(!ReturnCode.SUCCESS.getCode().equals(response.getResultCode())) {
-                return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(response);
+            if (!clientRateLimiter.tryAcquire(apiRequest.getClientId())) {
+                return throttledResponse(apiRequest);
             }
 
-            // 如果 ISIS 處理成功且 Tandem 也處理成功
-            // Tandem 回應的結果
-            String tandemResultCode = response.getMsgInData().getMsgReturnCode();
-            // one way 的時候，Tandem 回應的結果是空字串
-            if (TandemMessage.DEFAULT_SUCCESS_CODE.equals(tandemResultCode) || "".equals(tandemResultCode)) {
-                response.setResultCode(ReturnCode.SUCCESS.getCode());
-                response.setResultMessage(ReturnCode.SUCCESS.getMessage());
-                logger.info("API 處理完成 sessionId: {}", apiRequest.getMsgInData().getMsgSessionId());
-            } else {
-                response.setResultCode(ReturnCode.WARNING.getCode());
-                response.setResultMessage(ReturnCode.WARNING.getMessage());
-                logger.warn("API 處理完成 sessionId: {}, 但交易失敗：{} {}", apiRequest.getMsgInData().getMsgSessionId(),
-                        response.getResultCode(), response.getResultMessage());
+            try {
+                // 將交易轉發到 Tandem Adapter
+                logger.info("API 收到請求 sessionId: {}", apiRequest.getMsgInData().getMsgSessionId());
+                TandemMessageResponse response = transactionDispatcher.forwardRequest(apiRequest);
+                isSuccess = true;
+
+                return toApiResponse(apiRequest, response);
+            } finally {
+                clientRateLimiter.release(apiRequest.getClientId());
             }
-            return ResponseEntity.status(HttpStatus.OK).body(response);
 
         } catch (Exception e) {
-            logger.error("API 處理時發生錯誤: {}", e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(buildErrorResponse(apiRequest, ReturnCode.SYSTEM_ERROR.getCode(),
-                            ReturnCode.SYSTEM_ERROR.getMessage()));
+            return handleException(apiRequest, e);
         }
 
         finally {
             if (!isSuccess) {
                 metrics.incrementErrorRequests();
             }
-            metrics.stopRequestTimer(timer);
         }
     }
 
+    /**
+     * 非同步版本的交易 API，等待 MQ 回應期間釋放 servlet 執行緒，回應到達時才完成
+     */
+    @PostMapping(value = "/api/v1/submitTransactionAsync", produces = "application/json;charset=UTF-8", consumes = "application/json;charset=UTF-8")
+    public CompletableFuture<ResponseEntity<TandemMessageResponse>> submitTransactionAsync(
+            @RequestBody TandemMessageRequest apiRequest) {
+        metrics.incrementTotalRequests();
+        metrics.incrementInFlightRequests();
+        Sample timer = metrics.startRequestTimer();
+
+        CompletableFuture<ResponseEntity<TandemMessageResponse>> result;
+        try {
+            ResponseEntity<TandemMessageResponse> invalidResponse = validateRequest(apiRequest);
+            if (invalidResponse != null) {
+                metrics.incrementErrorRequests();
+                result = CompletableFuture.completedFuture(invalidResponse);
+            } else if (!clientRateLimiter.tryAcquire(apiRequest.getClientId())) {
+                metrics.incrementErrorRequests();
+                result = CompletableFuture.completedFuture(throttledResponse(apiRequest));
+            } else {
+                // 將交易轉發到 Tandem Adapter
+                logger.info("API 收到請求 sessionId: {}", apiRequest.getMsgInData().getMsgSessionId());
+                try {
+                    result = transactionDispatcher.forwardRequestAsync(apiRequest)
+                            .handle((response, error) -> {
+                                if (error != null) {
+                                    metrics.incrementErrorRequests();
+                                    return handleException(apiRequest, error);
+                                }
+                                return toApiResponse(apiRequest, response);
+                            })
+                            .whenComplete((response, error) -> clientRateLimiter.release(apiRequest.getClientId()));
+                } catch (RuntimeException e) {
+                    clientRateLimiter.release(apiRequest.getClientId());
+                    throw e;
+                }
+            }
+        } catch (Exception e) {
+            metrics.incrementErrorRequests();
+            result = CompletableFuture.completedFuture(handleException(apiRequest, e));
+        }
+
+        return result.whenComplete((response, error) -> {
+            recordLatency(timer, apiRequest, response);
+            metrics.decrementInFlightRequests();
+        });
+    }
+
+    /**
+     * 依用戶端、交易代號與結果代碼記錄延遲時間
+     */
+    private void recordLatency(Sample timer, TandemMessageRequest apiRequest,
+            ResponseEntity<TandemMessageResponse> apiResponse) {
+        String strnkey = apiRequest.getMsgInData() == null ? null : apiRequest.getMsgInData().getMsgStrnkeyNo();
+        String resultCode = apiResponse == null || apiResponse.getBody() == null
+                ? null
+                : apiResponse.getBody().getResultCode();
+        metrics.stopRequestTimer(timer, apiRequest.getClientId(), strnkey, resultCode);
+    }
+
+    /**
+     * 驗證請求，驗證失敗時回傳錯誤回應，成功則回傳 null
+     */
+    private ResponseEntity<TandemMessageResponse> validateRequest(TandemMessageRequest apiRequest) {
+        // 驗證 clientId 和 clientSecret
+        if (!clientValidator.validate(apiRequest.getClientId(), apiRequest.getClientSecret())) {
+            return ResponseEntity
+                    .status(HttpStatus.UNAUTHORIZED)
+                    .body(buildErrorResponse(apiRequest, ReturnCode.UNAUTHORIZED.getCode(),
+                            ReturnCode.UNAUTHORIZED.getMessage()));
+        }
+
+        if (apiRequest.getMsgInData() == null) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(buildErrorResponse(apiRequest, ReturnCode.BAD_REQUEST.getCode(),
+                            ReturnCode.BAD_REQUEST.getMessage()));
+        }
+
+        // 如果沒有 sessionId 則產生一個， 以便於後續追蹤
+        if (apiRequest.getMsgInData().getMsgSessionId() == null) {
+            apiRequest.getMsgInData().setMsgSessionId(UUID.randomUUID().toString());
+        }
+        return null;
+    }
+
+    private ResponseEntity<TandemMessageResponse> throttledResponse(TandemMessageRequest apiRequest) {
+        return ResponseEntity
+                .status(HttpStatus.TOO_MANY_REQUESTS)
+                .body(buildErrorResponse(apiRequest, ReturnCode.CLIENT_THROTTLED.getCode(),
+                        ReturnCode.CLIENT_THROTTLED.getMessage()));
+    }
+
+    private ResponseEntity<TandemMessageResponse> toApiResponse(TandemMessageRequest apiRequest,
+            TandemMessageResponse response) {
+        // 超過同時處理上限，回傳 503 讓呼叫端稍後重試
+        if (ReturnCode.SERVER_BUSY.getCode().equals(response.getResultCode())) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
+        }
+
+        // 如果 ISIS 處理失敗，則回傳 502
+        if(!ReturnCode.SUCCESS.getCode().equals(response.getResultCode())) {
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(response);
+        }
+
+        // 如果 ISIS 處理成功且 Tandem 也處理成功
+        // Tandem 回應的結果
+        String tandemResultCode = response.getMsgInData().getMsgReturnCode();
+        // one way 的時候，Tandem 回應的結果是空字串
+        if (TandemMessage.DEFAULT_SUCCESS_CODE.equals(tandemResultCode) || "".equals(tandemResultCode)) {
+            response.setResultCode(ReturnCode.SUCCESS.getCode());
+            response.setResultMessage(ReturnCode.SUCCESS.getMessage());
+            logger.info("API 處理完成 sessionId: {}", apiRequest.getMsgInData().getMsgSessionId());
+        } else {
+            response.setResultCode(ReturnCode.WARNING.getCode());
+            response.setResultMessage(ReturnCode.WARNING.getMessage());
+            logger.warn("API 處理完成 sessionId: {}, 但交易失敗：{} {}", apiRequest.getMsgInData().getMsgSessionId(),
+                    response.getResultCode(), response.getResultMessage());
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(response);
+    }
+
+    private ResponseEntity<TandemMessageResponse> handleException(TandemMessageRequest apiRequest, Throwable e) {
+        logger.error("API 處理時發生錯誤: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(buildErrorResponse(apiRequest, ReturnCode.SYSTEM_ERROR.getCode(),
+                        ReturnCode.SYSTEM_ERROR.getMessage()));
+    }
+
     private TandemMessageResponse buildErrorResponse(TandemMessageRequest request, String errorCode,
             String errorMessage) {
         TandemMessageResponse response = TandemMessageHelper.buildResponse(request);
@@ -0,0 +1,110 @@
+package tw.com.sc.dispatch;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import tw.com.sc.model.AdmissionSettings;
+
+/**
+ * 依往返時間自動調整的同時處理上限 (AIMD)
+ * 以統計視窗內的最小往返時間為基準，平滑後的往返時間超過基準 latencyTolerance 倍、或交易逾時/失敗時，
+ * 上限乘上 backoffRatio（每個往返時間最多降一次）；否則在使用量達上限一半以上時每筆加 1。
+ * 逾時/失敗的交易只當作壅塞訊號，不計入往返時間，避免逾時時間拉高平滑值而延後之後的調降。
+ * 超過上限的請求直接拒絕，不進入 MQ 排隊。
+ */
+class AdaptiveConcurrencyLimit {
+
+    private static final double SMOOTHING = 0.1;
+
+    private final AdmissionSettings settings;
+    private final long minRttWindowNanos;
+    private final LongSupplier nanoClock;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // 回報結果時在請求執行緒上更新，使用 ReentrantLock 避免 virtual thread 被 pin 住
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile int limit;
+    private double estimatedLimit;
+    private double smoothedRtt = 0;
+    private long minRtt = Long.MAX_VALUE;
+    private long previousMinRtt = Long.MAX_VALUE;
+    private long windowStart;
+    private long lastDecrease;
+
+    AdaptiveConcurrencyLimit(AdmissionSettings settings) {
+        this(settings, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimit(AdmissionSettings settings, LongSupplier nanoClock) {
+        this.settings = settings;
+        this.nanoClock = nanoClock;
+        this.minRttWindowNanos = TimeUnit.MILLISECONDS.toNanos(settings.getMinRttWindow());
+        this.estimatedLimit = Math.max(settings.getMinLimit(), Math.min(settings.getMaxLimit(), settings.getInitialLimit()));
+        this.limit = (int) estimatedLimit;
+        this.windowStart = nanoClock.getAsLong();
+        this.lastDecrease = windowStart;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * 未達上限時佔用一個名額並回傳 true，之後必須呼叫 release
+     */
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 歸還名額並以這筆交易的往返時間調整上限，dropped 表示交易逾時或 MQ 錯誤
+     */
+    void release(long rttNanos, boolean dropped) {
+        int inFlightAtRelease = inFlight.getAndDecrement();
+
+        lock.lock();
+        try {
+            long now = nanoClock.getAsLong();
+            if (now - windowStart >= minRttWindowNanos) {
+                // 基準往返時間取最近兩個視窗的最小值，MQ 變慢後基準才會跟著調整
+                previousMinRtt = minRtt;
+                minRtt = Long.MAX_VALUE;
+                windowStart = now;
+            }
+            if (!dropped) {
+                minRtt = Math.min(minRtt, rttNanos);
+                smoothedRtt = smoothedRtt == 0 ? rttNanos : smoothedRtt * (1 - SMOOTHING) + rttNanos * SMOOTHING;
+            }
+
+            long baseline = Math.min(minRtt, previousMinRtt);
+            boolean congested = dropped
+                    || (baseline != Long.MAX_VALUE && smoothedRtt > baseline * settings.getLatencyTolerance());
+            if (congested) {
+                if (now - lastDecrease >= smoothedRtt) {
+                    estimatedLimit = Math.max(settings.getMinLimit(), estimatedLimit * settings.getBackoffRatio());
+                    lastDecrease = now;
+                }
+            } else if (inFlightAtRelease * 2 >= estimatedLimit) {
+                // 使用量低時不調高，避免閒置期間上限無限制地增加
+                estimatedLimit = Math.min(settings.getMaxLimit(), estimatedLimit + 1);
+            }
+            limit = (int) estimatedLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package tw.com.sc.dispatch;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 import javax.jms.JMSException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import tw.com.sc.audit.PayloadAuditLogger;
 import tw.com.sc.errorcode.ReturnCode;
 import tw.com.sc.model.txmsg.TandemMessageHelper;
 import tw.com.sc.model.txmsg.TandemMessageRequest;
@@ -17,17 +21,18 @@ public class ImmediateResponseHandler implements MessageHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(ImmediateResponseHandler.class);
     private final MqConnectionManager mqConnectionManager;
+    private final PayloadAuditLogger payloadAuditLogger;
 
-    public ImmediateResponseHandler(MqConnectionManager mqConnectionManager) {
+    public ImmediateResponseHandler(MqConnectionManager mqConnectionManager, PayloadAuditLogger payloadAuditLogger) {
         this.mqConnectionManager = mqConnectionManager; 
+        this.payloadAuditLogger = payloadAuditLogger;
     }
 
     @Override
     public TandemMessageResponse processRequest(TandemMessageRequest message) {
         try {
-            String jsonMessage = TandemMessageHelper.RequestSerializer.toJson(message);
-            logger.info("收到交易請求，轉發訊息到 MQ: {}", jsonMessage);
-            mqConnectionManager.sendTxMessageAsynchronous(jsonMessage);
+            payloadAuditLogger.record("gateway.request", message);
+            mqConnectionManager.sendTxMessageAsynchronous(message);
             // 回傳成功訊息
             TandemMessageResponse response = TandemMessageHelper.buildResponse(message);
             response.setResultCode(ReturnCode.SUCCESS.getCode());
@@ -36,11 +41,49 @@ public class ImmediateResponseHandler implements MessageHandler {
             return response;
             
         } catch (JMSException e) {
-            logger.error("MQ發送訊息失敗(errorCode={}): {} {}", e.getErrorCode(), e.getMessage(), message);
-            TandemMessageResponse response = TandemMessageHelper.buildResponse(message);
-            response.setResultCode(ReturnCode.MQ_SEND_ERROR.getCode());
-            response.setResultMessage(ReturnCode.MQ_SEND_ERROR.getMessage());
-            return response;
+            logSendFailure(message, e);
+            return buildErrorResponse(message);
         }
     }
+
+    /**
+     * 啟用 mq.onewayBatch 時不佔用請求執行緒等待批次 commit
+     */
+    @Override
+    public CompletableFuture<TandemMessageResponse> processRequestAsync(TandemMessageRequest message) {
+        payloadAuditLogger.record("gateway.request", message);
+        return mqConnectionManager.submitTxMessageAsynchronous(message)
+                .handle((messageId, error) -> {
+                    if (error == null) {
+                        TandemMessageResponse response = TandemMessageHelper.buildResponse(message);
+                        response.setResultCode(ReturnCode.SUCCESS.getCode());
+                        response.setResultMessage(ReturnCode.SUCCESS.getMessage());
+                        logger.info("訊息已轉發 sessionId: {}", message.getMsgInData().getMsgSessionId());
+                        return response;
+                    }
+
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (cause instanceof JMSException e) {
+                        logSendFailure(message, e);
+                        return buildErrorResponse(message);
+                    }
+                    throw new CompletionException(cause);
+                });
+    }
+
+    /**
+     * 請求內容含 CLIENT-SECRET，一般 log 只記錄 sessionId，電文內容經由稽核記錄遮罩後寫入
+     */
+    private void logSendFailure(TandemMessageRequest message, JMSException e) {
+        logger.error("MQ發送訊息失敗(errorCode={}): sessionId={}, {}", e.getErrorCode(),
+                message.getMsgInData().getMsgSessionId(), e.getMessage());
+        payloadAuditLogger.record("gateway.error", message);
+    }
+
+    private TandemMessageResponse buildErrorResponse(TandemMessageRequest message) {
+        TandemMessageResponse response = TandemMessageHelper.buildResponse(message);
+        response.setResultCode(ReturnCode.MQ_SEND_ERROR.getCode());
+        response.setResultMessage(ReturnCode.MQ_SEND_ERROR.getMessage());
+        return response;
+    }
 }
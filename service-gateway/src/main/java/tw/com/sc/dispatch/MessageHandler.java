@@ -1,8 +1,17 @@
 package tw.com.sc.dispatch;
 
+import java.util.concurrent.CompletableFuture;
+
 import tw.com.sc.model.txmsg.TandemMessageRequest;
 import tw.com.sc.model.txmsg.TandemMessageResponse;
 
 public interface MessageHandler {
     TandemMessageResponse processRequest(TandemMessageRequest request);
+
+    /**
+     * 非同步處理請求，預設直接以同步結果完成
+     */
+    default CompletableFuture<TandemMessageResponse> processRequestAsync(TandemMessageRequest request) {
+        return CompletableFuture.completedFuture(processRequest(request));
+    }
 }
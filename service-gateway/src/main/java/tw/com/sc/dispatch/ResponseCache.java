@@ -0,0 +1,216 @@
+package tw.com.sc.dispatch;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import io.micrometer.core.instrument.Counter;
+import tw.com.sc.errorcode.ReturnCode;
+import tw.com.sc.metrics.ApiServiceMetrics;
+import tw.com.sc.model.txmsg.TandemMessageHelper;
+import tw.com.sc.model.txmsg.TandemMessageResponse;
+
+/**
+ * 交易回應快取，用於重送交易 (replay) 與相同查詢交易的合併 (inquiry)
+ * 處理中的交易也登記在快取中，相同 key 的請求直接等待同一筆 MQ 請求的結果；
+ * 只保留成功 (0000) 的回應，逾時、MQ 錯誤、超載等結果不保留，讓呼叫端重送時可以再送一次。
+ * ttl 為 0 時只合併處理中的交易，完成後不保留。
+ * 保留時間固定，先完成的回應一定先過期，因此以完成順序的佇列同時處理過期與超過筆數/大小上限的淘汰。
+ */
+class ResponseCache {
+
+    /**
+     * 每筆回應除了字串以外的估計大小（物件標頭、map entry、future 等）
+     */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    private final long ttl;
+    private final int maxEntries;
+    private final long maxMemory;
+    /**
+     * 目前時間(單位為 milliseconds)
+     */
+    private final LongSupplier clock;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // 回應完成時在請求執行緒上更新，使用 ReentrantLock 避免 virtual thread 被 pin 住
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<Entry> completed = new ArrayDeque<>();
+    private volatile int completedCount;
+    private volatile long memory;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter coalescedCounter;
+    private final Counter expiredCounter;
+    private final Counter evictedCounter;
+
+    /**
+     * name 為 metrics 名稱的一部分，例如 replay 對應 api.replay.cache
+     */
+    ResponseCache(String name, long ttl, int maxEntries, long maxMemory, ApiServiceMetrics metrics) {
+        this(name, ttl, maxEntries, maxMemory, metrics, System::currentTimeMillis);
+    }
+
+    ResponseCache(String name, long ttl, int maxEntries, long maxMemory, ApiServiceMetrics metrics,
+            LongSupplier clock) {
+        this.clock = clock;
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+        this.maxMemory = maxMemory;
+        this.hitCounter = metrics.responseCacheCounter(name, "hit");
+        this.missCounter = metrics.responseCacheCounter(name, "miss");
+        this.coalescedCounter = metrics.responseCacheCounter(name, "coalesced");
+        this.expiredCounter = metrics.responseCacheEvictionCounter(name, "expired");
+        this.evictedCounter = metrics.responseCacheEvictionCounter(name, "size");
+        metrics.registerResponseCacheGauges(name, () -> completedCount, () -> memory);
+    }
+
+    /**
+     * 查詢 key 對應的回應，沒有時登記為處理中並由呼叫端負責送出交易，完成後必須呼叫 complete
+     */
+    Reservation reserve(String key) {
+        long now = clock.getAsLong();
+        while (true) {
+            Entry existing = entries.get(key);
+            if (existing == null) {
+                Entry created = new Entry(key);
+                if (entries.putIfAbsent(key, created) == null) {
+                    missCounter.increment();
+                    evictExpired(now);
+                    return new Reservation(created, true);
+                }
+                continue;
+            }
+            if (existing.isExpired(now)) {
+                // 佔用的大小等到淘汰時才扣除
+                entries.remove(key, existing);
+                continue;
+            }
+            (existing.future.isDone() ? hitCounter : coalescedCounter).increment();
+            return new Reservation(existing, false);
+        }
+    }
+
+    /**
+     * 交易完成，成功的回應保留 ttl 時間，其他結果只交給正在等待的請求
+     */
+    void complete(Reservation reservation, TandemMessageResponse response, Throwable error) {
+        Entry entry = reservation.entry;
+        if (error != null || response == null) {
+            entries.remove(entry.key, entry);
+            entry.future.completeExceptionally(error != null ? error : new IllegalStateException("交易沒有回應"));
+            return;
+        }
+
+        // 呼叫端之後會修改回應的結果代碼，快取保留一份複本
+        TandemMessageResponse cached = TandemMessageHelper.copyResponse(response);
+        if (ttl <= 0 || !ReturnCode.SUCCESS.getCode().equals(cached.getResultCode())) {
+            entries.remove(entry.key, entry);
+            entry.future.complete(cached);
+            return;
+        }
+
+        entry.size = estimateSize(entry.key, cached);
+        long now = clock.getAsLong();
+        lock.lock();
+        try {
+            entry.expiresAt = now + ttl;
+            completed.addLast(entry);
+            memory += entry.size;
+            evict(now);
+        } finally {
+            lock.unlock();
+        }
+        entry.future.complete(cached);
+    }
+
+    private void evictExpired(long now) {
+        // 只在沒有其他執行緒淘汰時順便清除過期的回應，不讓請求等待
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            evict(now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void evict(long now) {
+        while (!completed.isEmpty()) {
+            Entry oldest = completed.peekFirst();
+            boolean expired = oldest.expiresAt <= now;
+            if (!expired && completed.size() <= maxEntries && memory <= maxMemory) {
+                break;
+            }
+            completed.pollFirst();
+            memory -= oldest.size;
+            entries.remove(oldest.key, oldest);
+            (expired ? expiredCounter : evictedCounter).increment();
+        }
+        completedCount = completed.size();
+    }
+
+    private static long estimateSize(String key, TandemMessageResponse response) {
+        long chars = key.length() + length(response.getResultCode()) + length(response.getResultMessage());
+        TandemMessageResponse.MsgInData msgInData = response.getMsgInData();
+        if (msgInData != null) {
+            chars += length(msgInData.getMsgSessionId()) + length(msgInData.getMsgStrnkeyNo())
+                    + length(msgInData.getMsgFiller()) + length(msgInData.getMsgReturnCode())
+                    + length(msgInData.getMsgTimeSeq()) + length(msgInData.getMsgTranDirection())
+                    + length(msgInData.getMsgLength()) + length(msgInData.getMsgInMsgData());
+        }
+        return ENTRY_OVERHEAD + chars * 2;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    static class Reservation {
+        private final Entry entry;
+        private final boolean owner;
+
+        private Reservation(Entry entry, boolean owner) {
+            this.entry = entry;
+            this.owner = owner;
+        }
+
+        /**
+         * 是否由呼叫端送出交易；false 表示已有相同 key 的回應或處理中的交易
+         */
+        boolean isOwner() {
+            return owner;
+        }
+
+        /**
+         * 相同 key 的回應，每個呼叫端各自取得一份複本
+         */
+        CompletableFuture<TandemMessageResponse> response() {
+            return entry.future.thenApply(TandemMessageHelper::copyResponse);
+        }
+    }
+
+    private static class Entry {
+        private final String key;
+        private final CompletableFuture<TandemMessageResponse> future = new CompletableFuture<>();
+        /**
+         * 處理中為 0
+         */
+        private volatile long expiresAt;
+        private long size;
+
+        private Entry(String key) {
+            this.key = key;
+        }
+
+        private boolean isExpired(long now) {
+            long deadline = expiresAt;
+            return deadline != 0 && deadline <= now;
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package tw.com.sc.dispatch;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 import javax.jms.JMSException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import tw.com.sc.audit.PayloadAuditLogger;
 import tw.com.sc.errorcode.ReturnCode;
 import tw.com.sc.model.txmsg.TandemMessageHelper;
 import tw.com.sc.model.txmsg.TandemMessageRequest;
@@ -16,44 +20,77 @@ import tw.com.sc.mq.MqConnectionManager;
 public class SynchronousMessageHandler implements MessageHandler {
 
     private final MqConnectionManager mqConnectionManager;
+    private final PayloadAuditLogger payloadAuditLogger;
     private static final Logger logger = LoggerFactory.getLogger(SynchronousMessageHandler.class);
 
-    public SynchronousMessageHandler(MqConnectionManager mqTransactionManager) {
+    public SynchronousMessageHandler(MqConnectionManager mqTransactionManager, PayloadAuditLogger payloadAuditLogger) {
         this.mqConnectionManager = mqTransactionManager;
+        this.payloadAuditLogger = payloadAuditLogger;
     }
 
     @Override
     public TandemMessageResponse processRequest(TandemMessageRequest request) {
-        String jsonMessage = null;
         try {
-            jsonMessage = TandemMessageHelper.RequestSerializer.toJson(request);
-            logger.info("收到交易請求，轉發訊息到 MQ: {}", jsonMessage);
-
-            String responseTxMessage = mqConnectionManager.sendTxMessageAndWaitForResponse(jsonMessage);
-
-            logger.info("從 MQ 收到交易回應: {}", responseTxMessage);
-            TandemMessageResponse response = TandemMessageHelper.ResponseSerializer.fromJson(responseTxMessage);
-            if(response.getResultCode() == null) { 
-                response.setResultCode(ReturnCode.SUCCESS.getCode());
-                response.setResultMessage(ReturnCode.SUCCESS.getMessage());
-            }
-            return response;
+            payloadAuditLogger.record("gateway.request", request);
+
+            TandemMessageResponse responseTxMessage = mqConnectionManager.sendTxMessageAndWaitForResponse(request);
+
+            return toResponse(responseTxMessage);
         } catch (JMSException e) {
-            logger.error("MQ 連線錯誤: {}", request, e);
-            logger.error("發送交易失敗: {}", jsonMessage);
-            TandemMessageResponse response = TandemMessageHelper.buildResponse(request);
-            response.setResultCode(ReturnCode.MQ_SEND_ERROR.getCode());
-            response.setResultMessage(ReturnCode.MQ_SEND_ERROR.getMessage());
-            return response;
+            logger.error("MQ 連線錯誤，發送交易失敗: sessionId={}, errorCode={}, {}",
+                    request.getMsgInData().getMsgSessionId(), e.getErrorCode(), e.getMessage());
+            return buildErrorResponse(request, ReturnCode.MQ_SEND_ERROR);
         } catch (MqConnectionManager.SyncTxTimeoutException e) {
-            logger.error("交易逾時: {}", request, e);
-            logger.error("發送交易失敗: {}", jsonMessage);
-            TandemMessageResponse response = TandemMessageHelper.buildResponse(request);
-            response.setResultCode(ReturnCode.MQ_SYNC_TX_TIMEOUT.getCode());
-            response.setResultMessage(ReturnCode.MQ_SYNC_TX_TIMEOUT.getMessage());
-            return response;
+            logger.error("交易逾時，發送交易失敗: sessionId={}, {}",
+                    request.getMsgInData().getMsgSessionId(), e.getMessage());
+            return buildErrorResponse(request, ReturnCode.MQ_SYNC_TX_TIMEOUT);
         }
 
     }
 
+    /**
+     * 非同步處理雙向交易，等待回應期間不佔用呼叫端的執行緒
+     */
+    @Override
+    public CompletableFuture<TandemMessageResponse> processRequestAsync(TandemMessageRequest request) {
+        payloadAuditLogger.record("gateway.request", request);
+
+        return mqConnectionManager.sendTxMessageAsync(request)
+                .handle((responseTxMessage, error) -> {
+                    if (error == null) {
+                        return toResponse(responseTxMessage);
+                    }
+
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    // 請求內容含 CLIENT-SECRET，一般 log 只記錄 sessionId
+                    if (cause instanceof JMSException e) {
+                        logger.error("MQ 連線錯誤，發送交易失敗: sessionId={}, errorCode={}, {}",
+                                request.getMsgInData().getMsgSessionId(), e.getErrorCode(), e.getMessage());
+                        return buildErrorResponse(request, ReturnCode.MQ_SEND_ERROR);
+                    }
+                    if (cause instanceof MqConnectionManager.SyncTxTimeoutException) {
+                        logger.error("交易逾時，發送交易失敗: sessionId={}, {}",
+                                request.getMsgInData().getMsgSessionId(), cause.getMessage());
+                        return buildErrorResponse(request, ReturnCode.MQ_SYNC_TX_TIMEOUT);
+                    }
+                    throw new CompletionException(cause);
+                });
+    }
+
+    private TandemMessageResponse toResponse(TandemMessageResponse response) {
+        if(response.getResultCode() == null) {
+            response.setResultCode(ReturnCode.SUCCESS.getCode());
+            response.setResultMessage(ReturnCode.SUCCESS.getMessage());
+        }
+        payloadAuditLogger.record("gateway.response", response);
+        return response;
+    }
+
+    private TandemMessageResponse buildErrorResponse(TandemMessageRequest request, ReturnCode returnCode) {
+        TandemMessageResponse response = TandemMessageHelper.buildResponse(request);
+        response.setResultCode(returnCode.getCode());
+        response.setResultMessage(returnCode.getMessage());
+        return response;
+    }
+
 }
@@ -1,9 +1,21 @@
 package tw.com.sc.dispatch;
 
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import tw.com.sc.errorcode.ReturnCode;
+import tw.com.sc.metrics.ApiServiceMetrics;
+import tw.com.sc.model.AdmissionSettings;
+import tw.com.sc.model.CoalescingSettings;
+import tw.com.sc.model.ReplayCacheSettings;
+import tw.com.sc.model.txmsg.TandemMessageHelper;
 import tw.com.sc.model.txmsg.TandemMessageRequest;
 import tw.com.sc.model.txmsg.TandemMessageResponse;
 
@@ -12,20 +24,207 @@ import tw.com.sc.model.txmsg.TandemMessageResponse;
  * 1. 電文格式轉換
  * 2. 電文轉發
  * 3. 電文回應
+ * 同時處理中的交易超過 transaction.admission 的上限時直接回傳 SERVER_BUSY，不再送往 MQ。
+ * 同一個用戶端以相同 MSG-SESSION-ID 重送時，由 transaction.replay-cache 回傳先前（或處理中）交易的回應。
+ * transaction.coalescing 指定的查詢交易，MSG-IN-MSG-DATA 相同的請求只送出一筆。
  */
 
 @Service
 public class TransactionDispatcher {
     private final MessageHandler messageHandler;
+    private final ApiServiceMetrics metrics;
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+    private final ResponseCache replayCache;
+    private final ResponseCache inquiryCache;
+    private final Set<String> coalescingStrnkeys;
     private static final Logger logger = LoggerFactory.getLogger(TransactionDispatcher.class);
 
-    public TransactionDispatcher(MessageHandler messageHandler) {
+    public TransactionDispatcher(MessageHandler messageHandler, AdmissionSettings admissionSettings,
+            ReplayCacheSettings replayCacheSettings, CoalescingSettings coalescingSettings, ApiServiceMetrics metrics) {
         this.messageHandler = messageHandler;
+        this.metrics = metrics;
+        this.concurrencyLimit = admissionSettings.isEnabled() ? new AdaptiveConcurrencyLimit(admissionSettings) : null;
+        if (concurrencyLimit != null) {
+            metrics.registerAdmissionGauges(concurrencyLimit::getLimit, concurrencyLimit::getInFlight);
+        }
+        this.replayCache = replayCacheSettings.isEnabled()
+                ? new ResponseCache("replay", replayCacheSettings.getTtl(), replayCacheSettings.getMaxEntries(),
+                        replayCacheSettings.getMaxMemory(), metrics)
+                : null;
+        this.coalescingStrnkeys = new HashSet<>(coalescingSettings.getStrnkeys());
+        this.inquiryCache = coalescingSettings.isEnabled() && !coalescingStrnkeys.isEmpty()
+                ? new ResponseCache("inquiry", coalescingSettings.getTtl(), coalescingSettings.getMaxEntries(),
+                        coalescingSettings.getMaxMemory(), metrics)
+                : null;
+        if (inquiryCache != null) {
+            logger.info("合併相同內容的查詢交易: {}", coalescingStrnkeys);
+        }
 
         logger.info("使用的 messageHandler:{} {}", messageHandler.getClass().getName());
     }
 
     public TandemMessageResponse forwardRequest(TandemMessageRequest message) {
-        return messageHandler.processRequest(message);
+        if (replayCache == null) {
+            return coalesceRequest(message);
+        }
+        return forwardThroughCache(replayCache, replayKey(message), message, this::coalesceRequest);
+    }
+
+    public CompletableFuture<TandemMessageResponse> forwardRequestAsync(TandemMessageRequest message) {
+        if (replayCache == null) {
+            return coalesceRequestAsync(message);
+        }
+        return forwardThroughCacheAsync(replayCache, replayKey(message), message, this::coalesceRequestAsync);
+    }
+
+    private TandemMessageResponse coalesceRequest(TandemMessageRequest message) {
+        if (!isCoalescable(message)) {
+            return admitRequest(message);
+        }
+        return forwardThroughCache(inquiryCache, inquiryKey(message), message, this::admitRequest);
+    }
+
+    private CompletableFuture<TandemMessageResponse> coalesceRequestAsync(TandemMessageRequest message) {
+        if (!isCoalescable(message)) {
+            return admitRequestAsync(message);
+        }
+        return forwardThroughCacheAsync(inquiryCache, inquiryKey(message), message, this::admitRequestAsync);
+    }
+
+    /**
+     * 快取中已有相同 key 的回應或處理中的交易時直接使用，否則由 next 送出交易並把結果放進快取
+     */
+    private TandemMessageResponse forwardThroughCache(ResponseCache cache, String key, TandemMessageRequest message,
+            Function<TandemMessageRequest, TandemMessageResponse> next) {
+        ResponseCache.Reservation reservation = cache.reserve(key);
+        if (!reservation.isOwner()) {
+            logger.debug("使用相同交易的回應 sessionId: {}", message.getMsgInData().getMsgSessionId());
+            try {
+                return sharedResponse(reservation, message).join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        TandemMessageResponse response = null;
+        Throwable error = null;
+        try {
+            response = next.apply(message);
+            return response;
+        } catch (RuntimeException | Error e) {
+            error = e;
+            throw e;
+        } finally {
+            cache.complete(reservation, response, error);
+        }
+    }
+
+    private CompletableFuture<TandemMessageResponse> forwardThroughCacheAsync(ResponseCache cache, String key,
+            TandemMessageRequest message,
+            Function<TandemMessageRequest, CompletableFuture<TandemMessageResponse>> next) {
+        ResponseCache.Reservation reservation = cache.reserve(key);
+        if (!reservation.isOwner()) {
+            logger.debug("使用相同交易的回應 sessionId: {}", message.getMsgInData().getMsgSessionId());
+            return sharedResponse(reservation, message);
+        }
+
+        CompletableFuture<TandemMessageResponse> result;
+        try {
+            result = next.apply(message);
+        } catch (RuntimeException e) {
+            cache.complete(reservation, null, e);
+            throw e;
+        }
+        return result.whenComplete((response, error) -> cache.complete(reservation, response, error));
+    }
+
+    /**
+     * 合併的查詢交易回應來自其他請求，MSG-SESSION-ID 改為呼叫端自己的
+     */
+    private static CompletableFuture<TandemMessageResponse> sharedResponse(ResponseCache.Reservation reservation,
+            TandemMessageRequest message) {
+        return reservation.response().thenApply(response -> {
+            if (response.getMsgInData() != null) {
+                response.getMsgInData().setMsgSessionId(message.getMsgInData().getMsgSessionId());
+            }
+            return response;
+        });
+    }
+
+    /**
+     * 不同用戶端可能使用相同的 sessionId，key 需包含 clientId，避免取得其他用戶端的回應
+     */
+    private static String replayKey(TandemMessageRequest message) {
+        return message.getClientId() + '|' + message.getMsgInData().getMsgSessionId();
+    }
+
+    private boolean isCoalescable(TandemMessageRequest message) {
+        return inquiryCache != null && coalescingStrnkeys.contains(message.getMsgInData().getMsgStrnkeyNo());
+    }
+
+    private static String inquiryKey(TandemMessageRequest message) {
+        return message.getMsgInData().getMsgStrnkeyNo() + '|' + message.getMsgInData().getMsgInMsgData();
+    }
+
+    private TandemMessageResponse admitRequest(TandemMessageRequest message) {
+        if (concurrencyLimit == null) {
+            return messageHandler.processRequest(message);
+        }
+        if (!concurrencyLimit.tryAcquire()) {
+            return rejectRequest(message);
+        }
+
+        long start = System.nanoTime();
+        boolean dropped = true;
+        try {
+            TandemMessageResponse response = messageHandler.processRequest(message);
+            dropped = isDropped(response);
+            return response;
+        } finally {
+            concurrencyLimit.release(System.nanoTime() - start, dropped);
+        }
+    }
+
+    private CompletableFuture<TandemMessageResponse> admitRequestAsync(TandemMessageRequest message) {
+        if (concurrencyLimit == null) {
+            return messageHandler.processRequestAsync(message);
+        }
+        if (!concurrencyLimit.tryAcquire()) {
+            return CompletableFuture.completedFuture(rejectRequest(message));
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<TandemMessageResponse> result;
+        try {
+            result = messageHandler.processRequestAsync(message);
+        } catch (RuntimeException e) {
+            concurrencyLimit.release(System.nanoTime() - start, true);
+            throw e;
+        }
+        return result.whenComplete((response, error) ->
+                concurrencyLimit.release(System.nanoTime() - start, error != null || isDropped(response)));
+    }
+
+    /**
+     * MQ 逾時或發送失敗視為壅塞的訊號
+     */
+    private static boolean isDropped(TandemMessageResponse response) {
+        if (response == null) {
+            return true;
+        }
+        String resultCode = response.getResultCode();
+        return ReturnCode.MQ_SYNC_TX_TIMEOUT.getCode().equals(resultCode)
+                || ReturnCode.MQ_SEND_ERROR.getCode().equals(resultCode);
+    }
+
+    private TandemMessageResponse rejectRequest(TandemMessageRequest message) {
+        metrics.incrementAdmissionRejected();
+        // 超載時每筆都記 warn 反而增加負擔，拒絕數量由 api.admission.rejected 統計
+        logger.debug("同時處理中的交易已達上限 {}，拒絕交易: {}", concurrencyLimit.getLimit(),
+                message.getMsgInData().getMsgSessionId());
+        TandemMessageResponse response = TandemMessageHelper.buildResponse(message);
+        response.setResultCode(ReturnCode.SERVER_BUSY.getCode());
+        response.setResultMessage(ReturnCode.SERVER_BUSY.getMessage());
+        return response;
     }
 }
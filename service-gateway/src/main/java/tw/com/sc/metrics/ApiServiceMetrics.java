@@ -1,19 +1,67 @@
 package tw.com.sc.metrics;
 
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
+import tw.com.sc.errorcode.ReturnCode;
+import tw.com.sc.model.ClientSettings;
+import tw.com.sc.model.LatencyMetricsSettings;
 
 @Component
 public class ApiServiceMetrics {
     private final Counter totalRequestsCounter;
     private final Counter errorRequestsCounter;
-    private final Timer requestLatencyTimer;
+    /**
+     * api.request.latency 依 handler / result 分開的 timer，設定開啟時再依 client / strnkey 分開，tag 值都有上限
+     */
+    private final Map<String, Timer> requestLatencyTimers = new ConcurrentHashMap<>();
+    private final Set<String> latencyStrnkeys = ConcurrentHashMap.newKeySet();
+    private final Map<String, String> clientTags = new HashMap<>();
+    private final Set<String> resultCodes = ConcurrentHashMap.newKeySet();
+    private final LatencyMetricsSettings latencySettings;
+    private final String handlerType;
+    private final Counter admissionRejectedCounter;
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final MeterRegistry registry;
+
+    private static final Logger logger = LoggerFactory.getLogger(ApiServiceMetrics.class);
+
+    private static final String UNKNOWN_TAG = "unknown";
+    private static final String OTHER_TAG = "other";
+    private static final Pattern STRNKEY_PATTERN = Pattern.compile("[0-9A-Za-z]{1,16}");
 
+    public ApiServiceMetrics(MeterRegistry registry,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreadsEnabled,
+            @Value("${transaction.message-handler:twoway}") String handlerType,
+            ClientSettings clientSettings, LatencyMetricsSettings latencySettings) {
+        this.registry = registry;
+        this.handlerType = handlerType;
+        this.latencySettings = latencySettings;
+        // 請求中的 clientId 為 base64 編碼，tag 使用設定檔中的原始 id，未設定的用戶端一律為 unknown
+        if (clientSettings.getClients() != null) {
+            clientSettings.getClients().forEach(client -> clientTags.put(
+                    Base64.getEncoder().encodeToString(client.getId().getBytes()), client.getId()));
+        }
+        for (ReturnCode returnCode : ReturnCode.values()) {
+            resultCodes.add(returnCode.getCode());
+        }
 
-    public ApiServiceMetrics(MeterRegistry registry) {
         // API 請求相關指標
         this.totalRequestsCounter = Counter.builder("api.requests.total")
             .description("total api requests count")
@@ -23,10 +71,23 @@ public class ApiServiceMetrics {
             .description("api errors count")
             .register(registry);
             
-        this.requestLatencyTimer = Timer.builder("api.request.latency")
-            .description("api request latency")
+        this.admissionRejectedCounter = Counter.builder("api.admission.rejected")
+            .description("requests rejected because the concurrency limit was reached")
+            .register(registry);
+
+        // spring.threads.virtual.enabled 只有在 Java 21 以上才會生效
+        boolean virtualThreads = virtualThreadsEnabled && Runtime.version().feature() >= 21;
+        if (virtualThreadsEnabled && !virtualThreads) {
+            logger.warn("spring.threads.virtual.enabled=true 但執行環境為 Java {}，仍使用 platform thread",
+                    Runtime.version().feature());
+        }
+        Gauge.builder("api.requests.inflight", inFlightRequests, AtomicInteger::get)
+            .description("api requests currently waiting for a result")
+            .tag("threads", virtualThreads ? "virtual" : "platform")
             .register(registry);
 
+        // 先建立成功交易的 timer，第一筆請求前 /actuator/metrics/api.request.latency 也有資料
+        latencyTimer(UNKNOWN_TAG, UNKNOWN_TAG, ReturnCode.SUCCESS.getCode());
     }
 
     // API 指標方法
@@ -34,16 +95,124 @@ public class ApiServiceMetrics {
         totalRequestsCounter.increment();
     }
 
+    public void incrementInFlightRequests() {
+        inFlightRequests.incrementAndGet();
+    }
+
+    public void decrementInFlightRequests() {
+        inFlightRequests.decrementAndGet();
+    }
+
     public void incrementErrorRequests() {
         errorRequestsCounter.increment();
     }
 
+    public void registerAdmissionGauges(Supplier<Number> limit, Supplier<Number> inFlight) {
+        Gauge.builder("api.admission.limit", limit)
+            .description("current adaptive concurrency limit for forwarded transactions")
+            .register(registry);
+        Gauge.builder("api.admission.inflight", inFlight)
+            .description("transactions admitted and not yet completed")
+            .register(registry);
+    }
+
+    public Counter clientRequestsCounter(String clientId, String result) {
+        return Counter.builder("api.client.requests")
+            .description("api requests per client by rate limit result")
+            .tag("client", clientId)
+            .tag("result", result)
+            .register(registry);
+    }
+
+    public void registerClientInFlightGauge(String clientId, Supplier<Number> inFlight) {
+        Gauge.builder("api.client.inflight", inFlight)
+            .description("api requests currently being processed per client")
+            .tag("client", clientId)
+            .register(registry);
+    }
+
+    public Counter responseCacheCounter(String cache, String result) {
+        return Counter.builder("api." + cache + ".cache")
+            .description("response cache lookups by result (hit, miss, coalesced onto an in-flight request)")
+            .tag("result", result)
+            .register(registry);
+    }
+
+    public Counter responseCacheEvictionCounter(String cache, String cause) {
+        return Counter.builder("api." + cache + ".cache.evictions")
+            .description("cached responses removed because they expired or the cache was full")
+            .tag("cause", cause)
+            .register(registry);
+    }
+
+    public void registerResponseCacheGauges(String cache, Supplier<Number> entries, Supplier<Number> memory) {
+        Gauge.builder("api." + cache + ".cache.entries", entries)
+            .description("completed responses held in the response cache")
+            .register(registry);
+        Gauge.builder("api." + cache + ".cache.memory", memory)
+            .description("estimated size of the responses held in the response cache")
+            .baseUnit("bytes")
+            .register(registry);
+    }
+
+    public void incrementAdmissionRejected() {
+        admissionRejectedCounter.increment();
+    }
+
     public Timer.Sample startRequestTimer() {
         return Timer.start();
     }
 
-    public void stopRequestTimer(Timer.Sample sample) {
-        sample.stop(requestLatencyTimer);
+    public void stopRequestTimer(Timer.Sample sample, String clientId, String strnkey, String resultCode) {
+        String clientTag = !latencySettings.isClientTag() || clientId == null
+                ? UNKNOWN_TAG
+                : clientTags.getOrDefault(clientId, UNKNOWN_TAG);
+        String strnkeyTag = latencySettings.isStrnkeyTag() ? strnkeyTag(strnkey) : UNKNOWN_TAG;
+        String resultTag = resultCode == null ? UNKNOWN_TAG : resultCodes.contains(resultCode) ? resultCode : OTHER_TAG;
+
+        sample.stop(latencyTimer(clientTag, strnkeyTag, resultTag));
+    }
+
+    private Timer latencyTimer(String clientTag, String strnkeyTag, String resultTag) {
+        return requestLatencyTimers.computeIfAbsent(
+                clientTag + '|' + strnkeyTag + '|' + resultTag,
+                key -> buildLatencyTimer(clientTag, strnkeyTag, resultTag));
+    }
+
+    /**
+     * 交易代號由呼叫端送入，只記錄格式正確的前 maxStrnkeys 個，避免 tag 數量無限制地增加
+     */
+    private String strnkeyTag(String strnkey) {
+        if (strnkey == null || !STRNKEY_PATTERN.matcher(strnkey).matches()) {
+            return UNKNOWN_TAG;
+        }
+        if (latencyStrnkeys.contains(strnkey)) {
+            return strnkey;
+        }
+        if (latencyStrnkeys.size() < latencySettings.getMaxStrnkeys() && latencyStrnkeys.add(strnkey)) {
+            return strnkey;
+        }
+        return OTHER_TAG;
+    }
+
+    private Timer buildLatencyTimer(String clientTag, String strnkeyTag, String resultTag) {
+        Timer.Builder builder = Timer.builder("api.request.latency");
+        // 未開啟的維度不加 tag，避免多出只有 unknown 一個值的 tag
+        if (latencySettings.isClientTag()) {
+            builder.tag("client", clientTag);
+        }
+        if (latencySettings.isStrnkeyTag()) {
+            builder.tag("strnkey", strnkeyTag);
+        }
+        return builder
+            .description("api request latency")
+            .tag("handler", handlerType)
+            .tag("result", resultTag)
+            .publishPercentileHistogram(latencySettings.isPercentileHistogram())
+            .serviceLevelObjectives(latencySettings.getSlo().toArray(Duration[]::new))
+            .minimumExpectedValue(Duration.ofMillis(1))
+            .maximumExpectedValue(Duration.ofMinutes(1))
+            .register(registry);
     }
 
 } 
\ No newline at end of file
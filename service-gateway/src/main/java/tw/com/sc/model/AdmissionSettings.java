@@ -0,0 +1,35 @@
+package tw.com.sc.model;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+
+/**
+ * 交易轉發前的流量控制，同時處理中的交易數量上限依 MQ 往返時間自動調整
+ * 預設關閉，啟用後超過上限的交易直接回傳 5003
+ */
+@Configuration
+@ConfigurationProperties(prefix = "transaction.admission")
+@Data
+public class AdmissionSettings {
+    private boolean enabled = false;
+    /**
+     * 啟動時的上限
+     */
+    private int initialLimit = 50;
+    private int minLimit = 10;
+    private int maxLimit = 1000;
+    /**
+     * 往返時間超過基準值的倍數時視為壅塞
+     */
+    private double latencyTolerance = 2.0;
+    /**
+     * 壅塞或交易失敗時上限乘上的比例
+     */
+    private double backoffRatio = 0.9;
+    /**
+     * 基準往返時間（視窗內最小值）的統計視窗(單位為 milliseconds)
+     */
+    private long minRttWindow = 10000;
+}
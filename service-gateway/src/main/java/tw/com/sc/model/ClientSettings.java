@@ -17,5 +17,17 @@ public class ClientSettings {
     public static class Client {
         private String id;
         private String secret;
+        /**
+         * 每秒可送出的交易數量，0 表示不限制
+         */
+        private double rateLimit = 0;
+        /**
+         * 短時間內可超過 rateLimit 的交易數量，0 表示與 rateLimit 相同
+         */
+        private int burst = 0;
+        /**
+         * 同時處理中的交易數量上限，0 表示不限制
+         */
+        private int maxConcurrent = 0;
     }
 }
\ No newline at end of file
@@ -0,0 +1,33 @@
+package tw.com.sc.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+
+/**
+ * 查詢類交易的合併，指定的 MSG-STRNKEY-NO 在 MSG-IN-MSG-DATA 相同時只送出一筆 MQ 請求，回應交給所有呼叫端
+ * 只能設定不會改變 Tandem 資料的交易代號
+ */
+@Configuration
+@ConfigurationProperties(prefix = "transaction.coalescing")
+@Data
+public class CoalescingSettings {
+    private boolean enabled = false;
+    /**
+     * 可以合併的交易代號
+     */
+    private List<String> strnkeys = new ArrayList<>();
+    /**
+     * 回應保留的時間(單位為 milliseconds)，0 表示只合併同時處理中的請求
+     */
+    private long ttl = 0;
+    private int maxEntries = 1000;
+    /**
+     * 保留的回應估計大小上限(單位為 bytes)
+     */
+    private long maxMemory = 16L * 1024 * 1024;
+}
@@ -0,0 +1,40 @@
+package tw.com.sc.model;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+
+/**
+ * api.request.latency 的分布統計設定
+ */
+@Configuration
+@ConfigurationProperties(prefix = "metrics.latency")
+@Data
+public class LatencyMetricsSettings {
+    /**
+     * 發布 percentile histogram，可在監控端計算 p50 / p99 / p999
+     */
+    private boolean percentileHistogram = true;
+    /**
+     * SLA 對應的延遲門檻，各門檻以內的請求數量會單獨統計
+     */
+    private List<Duration> slo = new ArrayList<>(List.of(Duration.ofMillis(100), Duration.ofMillis(500),
+            Duration.ofSeconds(1), Duration.ofSeconds(3), Duration.ofSeconds(10)));
+    /**
+     * 依用戶端分開統計（client tag），每個用戶端各有一組 histogram
+     */
+    private boolean clientTag = false;
+    /**
+     * 依交易代號分開統計（strnkey tag），每個交易代號各有一組 histogram
+     */
+    private boolean strnkeyTag = false;
+    /**
+     * strnkey tag 最多記錄的交易代號數量，超過的交易代號歸為 other
+     */
+    private int maxStrnkeys = 200;
+}
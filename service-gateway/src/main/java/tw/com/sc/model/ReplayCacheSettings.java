@@ -0,0 +1,29 @@
+package tw.com.sc.model;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+
+/**
+ * 重送交易的回應快取，同一個用戶端以相同 MSG-SESSION-ID 重送時直接回傳先前的回應
+ * 預設關閉；啟用後 ttl 內重複的 MSG-SESSION-ID 一律視為同一筆交易的重送，只有成功回應會被保留，且不會再送到 Tandem。
+ */
+@Configuration
+@ConfigurationProperties(prefix = "transaction.replay-cache")
+@Data
+public class ReplayCacheSettings {
+    private boolean enabled = false;
+    /**
+     * 回應保留的時間(單位為 milliseconds)
+     */
+    private long ttl = 60000;
+    /**
+     * 最多保留的回應筆數
+     */
+    private int maxEntries = 10000;
+    /**
+     * 保留的回應估計大小上限(單位為 bytes)
+     */
+    private long maxMemory = 64L * 1024 * 1024;
+}
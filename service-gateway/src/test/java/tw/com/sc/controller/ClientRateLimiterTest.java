@@ -0,0 +1,116 @@
+package tw.com.sc.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import tw.com.sc.metrics.ApiServiceMetrics;
+import tw.com.sc.model.ClientSettings;
+import tw.com.sc.model.LatencyMetricsSettings;
+
+class ClientRateLimiterTest {
+
+    private static final String CLIENT_ID = "client";
+    private static final String CLIENT_KEY = Base64.getEncoder().encodeToString(CLIENT_ID.getBytes());
+
+    private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+
+    private ClientRateLimiter limiter(double rateLimit, int burst, int maxConcurrent) {
+        ClientSettings.Client client = new ClientSettings.Client();
+        client.setId(CLIENT_ID);
+        client.setRateLimit(rateLimit);
+        client.setBurst(burst);
+        client.setMaxConcurrent(maxConcurrent);
+        ClientSettings clientSettings = new ClientSettings();
+        clientSettings.setClients(List.of(client));
+        ApiServiceMetrics metrics = new ApiServiceMetrics(new SimpleMeterRegistry(), false, "twoway",
+                clientSettings, new LatencyMetricsSettings());
+        return new ClientRateLimiter(clientSettings, metrics, clock::get);
+    }
+
+    /**
+     * 連續取得額度（取得後立即歸還）直到被拒絕，回傳成功的筆數
+     */
+    private static int acquireUntilRejected(ClientRateLimiter limiter) {
+        int accepted = 0;
+        while (limiter.tryAcquire(CLIENT_KEY)) {
+            limiter.release(CLIENT_KEY);
+            accepted++;
+        }
+        return accepted;
+    }
+
+    @Test
+    void allowsBurstThenRejects() {
+        ClientRateLimiter limiter = limiter(10, 5, 0);
+
+        assertEquals(5, acquireUntilRejected(limiter));
+    }
+
+    @Test
+    void refillsAtConfiguredRate() {
+        ClientRateLimiter limiter = limiter(10, 5, 0);
+        acquireUntilRejected(limiter);
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(99));
+        assertFalse(limiter.tryAcquire(CLIENT_KEY));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(limiter.tryAcquire(CLIENT_KEY));
+        limiter.release(CLIENT_KEY);
+        assertFalse(limiter.tryAcquire(CLIENT_KEY));
+    }
+
+    @Test
+    void idleTimeDoesNotAccumulateBeyondBurst() {
+        ClientRateLimiter limiter = limiter(10, 5, 0);
+        acquireUntilRejected(limiter);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(5, acquireUntilRejected(limiter));
+    }
+
+    @Test
+    void burstDefaultsToRateLimit() {
+        ClientRateLimiter limiter = limiter(3, 0, 0);
+
+        assertEquals(3, acquireUntilRejected(limiter));
+    }
+
+    @Test
+    void limitsConcurrentRequests() {
+        ClientRateLimiter limiter = limiter(0, 0, 2);
+
+        assertTrue(limiter.tryAcquire(CLIENT_KEY));
+        assertTrue(limiter.tryAcquire(CLIENT_KEY));
+        assertFalse(limiter.tryAcquire(CLIENT_KEY));
+        limiter.release(CLIENT_KEY);
+        assertTrue(limiter.tryAcquire(CLIENT_KEY));
+    }
+
+    @Test
+    void concurrencyRejectionDoesNotConsumeRate() {
+        ClientRateLimiter limiter = limiter(10, 2, 1);
+
+        assertTrue(limiter.tryAcquire(CLIENT_KEY));
+        assertFalse(limiter.tryAcquire(CLIENT_KEY));
+        limiter.release(CLIENT_KEY);
+        assertTrue(limiter.tryAcquire(CLIENT_KEY));
+    }
+
+    @Test
+    void unknownClientIsNotLimited() {
+        ClientRateLimiter limiter = limiter(1, 1, 1);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire("unknown"));
+        }
+    }
+}
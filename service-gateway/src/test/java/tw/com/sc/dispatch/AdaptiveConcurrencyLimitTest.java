@@ -0,0 +1,139 @@
+package tw.com.sc.dispatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import tw.com.sc.model.AdmissionSettings;
+
+class AdaptiveConcurrencyLimitTest {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+
+    private AdaptiveConcurrencyLimit limit() {
+        AdmissionSettings settings = new AdmissionSettings();
+        settings.setInitialLimit(20);
+        settings.setMinLimit(10);
+        settings.setMaxLimit(100);
+        settings.setLatencyTolerance(2.0);
+        settings.setBackoffRatio(0.5);
+        settings.setMinRttWindow(60000);
+        return new AdaptiveConcurrencyLimit(settings, clock::get);
+    }
+
+    /**
+     * 佔滿目前的上限後依序以 rtt 歸還，每筆之間時間前進 step
+     */
+    private void fillAndRelease(AdaptiveConcurrencyLimit limit, long rtt, boolean dropped, long step) {
+        int acquired = 0;
+        while (limit.tryAcquire()) {
+            acquired++;
+        }
+        for (int i = 0; i < acquired; i++) {
+            clock.addAndGet(step);
+            limit.release(rtt, dropped);
+        }
+    }
+
+    @Test
+    void rejectsWhenLimitIsReached() {
+        AdaptiveConcurrencyLimit limit = limit();
+        for (int i = 0; i < 20; i++) {
+            assertTrue(limit.tryAcquire());
+        }
+        assertFalse(limit.tryAcquire());
+
+        limit.release(RTT, false);
+        assertTrue(limit.tryAcquire());
+    }
+
+    @Test
+    void increasesWhileRttStaysAtBaseline() {
+        AdaptiveConcurrencyLimit limit = limit();
+        fillAndRelease(limit, RTT, false, RTT);
+
+        assertTrue(limit.getLimit() > 20);
+        assertEquals(0, limit.getInFlight());
+    }
+
+    @Test
+    void doesNotIncreaseWhenMostlyIdle() {
+        AdaptiveConcurrencyLimit limit = limit();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limit.tryAcquire());
+            clock.addAndGet(RTT);
+            limit.release(RTT, false);
+        }
+
+        assertEquals(20, limit.getLimit());
+    }
+
+    @Test
+    void decreasesWhenRttExceedsTolerance() {
+        AdaptiveConcurrencyLimit limit = limit();
+        fillAndRelease(limit, RTT, false, RTT);
+        int increased = limit.getLimit();
+
+        for (int i = 0; i < 20; i++) {
+            assertTrue(limit.tryAcquire());
+            clock.addAndGet(RTT * 10);
+            limit.release(RTT * 10, false);
+        }
+
+        assertTrue(limit.getLimit() < increased);
+    }
+
+    @Test
+    void decreasesAtMostOncePerRtt() {
+        AdaptiveConcurrencyLimit limit = limit();
+        fillAndRelease(limit, RTT, false, RTT);
+        int increased = limit.getLimit();
+
+        clock.addAndGet(RTT);
+        limit.tryAcquire();
+        limit.release(RTT, true);
+        assertEquals(Math.max(10, (int) (increased * 0.5)), limit.getLimit());
+
+        // 同一個往返時間內的其他失敗不再調降
+        limit.tryAcquire();
+        limit.release(RTT, true);
+        assertEquals(Math.max(10, (int) (increased * 0.5)), limit.getLimit());
+    }
+
+    @Test
+    void droppedSamplesDoNotInflateSmoothedRtt() {
+        AdaptiveConcurrencyLimit limit = limit();
+        fillAndRelease(limit, RTT, false, RTT);
+        long timeout = TimeUnit.SECONDS.toNanos(5);
+
+        // 逾時只調降上限，不影響平滑後的往返時間，下一個往返時間後仍可再次調降
+        clock.addAndGet(RTT);
+        limit.tryAcquire();
+        limit.release(timeout, true);
+        int afterFirstDrop = limit.getLimit();
+
+        clock.addAndGet(RTT * 2);
+        limit.tryAcquire();
+        limit.release(timeout, true);
+        assertTrue(limit.getLimit() < afterFirstDrop);
+    }
+
+    @Test
+    void neverDropsBelowMinLimit() {
+        AdaptiveConcurrencyLimit limit = limit();
+        for (int i = 0; i < 20; i++) {
+            clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+            limit.tryAcquire();
+            limit.release(RTT, true);
+        }
+
+        assertEquals(10, limit.getLimit());
+    }
+}
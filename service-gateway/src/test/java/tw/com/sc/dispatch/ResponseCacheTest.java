@@ -0,0 +1,149 @@
+package tw.com.sc.dispatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import tw.com.sc.errorcode.ReturnCode;
+import tw.com.sc.metrics.ApiServiceMetrics;
+import tw.com.sc.model.ClientSettings;
+import tw.com.sc.model.LatencyMetricsSettings;
+import tw.com.sc.model.txmsg.TandemMessageResponse;
+
+class ResponseCacheTest {
+
+    private static final long TTL = 60000;
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    private ResponseCache cache(long ttl, int maxEntries, long maxMemory) {
+        ApiServiceMetrics metrics = new ApiServiceMetrics(new SimpleMeterRegistry(), false, "twoway",
+                new ClientSettings(), new LatencyMetricsSettings());
+        return new ResponseCache("test", ttl, maxEntries, maxMemory, metrics, clock::get);
+    }
+
+    private static TandemMessageResponse response(String resultCode) {
+        TandemMessageResponse response = new TandemMessageResponse();
+        response.setResultCode(resultCode);
+        response.setResultMessage("message");
+        return response;
+    }
+
+    private static TandemMessageResponse success() {
+        return response(ReturnCode.SUCCESS.getCode());
+    }
+
+    @Test
+    void successResponseIsReturnedUntilTtlExpires() throws Exception {
+        ResponseCache cache = cache(TTL, 100, Long.MAX_VALUE);
+        ResponseCache.Reservation owner = cache.reserve("k1");
+        assertTrue(owner.isOwner());
+        cache.complete(owner, success(), null);
+
+        clock.addAndGet(TTL - 1);
+        ResponseCache.Reservation hit = cache.reserve("k1");
+        assertFalse(hit.isOwner());
+        assertEquals(ReturnCode.SUCCESS.getCode(), hit.response().get().getResultCode());
+
+        clock.addAndGet(1);
+        assertTrue(cache.reserve("k1").isOwner());
+    }
+
+    @Test
+    void nonSuccessResponseIsNotKept() throws Exception {
+        ResponseCache cache = cache(TTL, 100, Long.MAX_VALUE);
+        ResponseCache.Reservation owner = cache.reserve("k1");
+        ResponseCache.Reservation waiter = cache.reserve("k1");
+        cache.complete(owner, response(ReturnCode.SERVER_BUSY.getCode()), null);
+
+        assertEquals(ReturnCode.SERVER_BUSY.getCode(), waiter.response().get().getResultCode());
+        assertTrue(cache.reserve("k1").isOwner());
+    }
+
+    @Test
+    void errorIsNotKept() {
+        ResponseCache cache = cache(TTL, 100, Long.MAX_VALUE);
+        ResponseCache.Reservation owner = cache.reserve("k1");
+        cache.complete(owner, null, new IllegalStateException("timeout"));
+
+        assertTrue(cache.reserve("k1").isOwner());
+    }
+
+    @Test
+    void zeroTtlOnlyCoalescesInFlightRequests() throws Exception {
+        ResponseCache cache = cache(0, 100, Long.MAX_VALUE);
+        ResponseCache.Reservation owner = cache.reserve("k1");
+        ResponseCache.Reservation waiter = cache.reserve("k1");
+        assertFalse(waiter.isOwner());
+        cache.complete(owner, success(), null);
+
+        assertEquals(ReturnCode.SUCCESS.getCode(), waiter.response().get().getResultCode());
+        assertTrue(cache.reserve("k1").isOwner());
+    }
+
+    @Test
+    void oldestResponseIsEvictedWhenMaxEntriesIsExceeded() {
+        ResponseCache cache = cache(TTL, 2, Long.MAX_VALUE);
+        for (String key : new String[] { "k1", "k2", "k3" }) {
+            cache.complete(cache.reserve(key), success(), null);
+        }
+
+        assertTrue(cache.reserve("k1").isOwner());
+        assertFalse(cache.reserve("k2").isOwner());
+        assertFalse(cache.reserve("k3").isOwner());
+    }
+
+    @Test
+    void oldestResponseIsEvictedWhenMaxMemoryIsExceeded() {
+        // 每筆估計約 270 bytes，上限只容得下一筆
+        ResponseCache cache = cache(TTL, 100, 400);
+        cache.complete(cache.reserve("k1"), success(), null);
+        cache.complete(cache.reserve("k2"), success(), null);
+
+        assertTrue(cache.reserve("k1").isOwner());
+        assertFalse(cache.reserve("k2").isOwner());
+    }
+
+    @Test
+    void coalescedWaitersGetTheSingleResult() throws Exception {
+        ResponseCache cache = cache(TTL, 100, Long.MAX_VALUE);
+        ResponseCache.Reservation owner = cache.reserve("k1");
+        ResponseCache.Reservation first = cache.reserve("k1");
+        ResponseCache.Reservation second = cache.reserve("k1");
+        assertFalse(first.isOwner());
+        assertFalse(second.isOwner());
+
+        CompletableFuture<TandemMessageResponse> firstResponse = first.response();
+        CompletableFuture<TandemMessageResponse> secondResponse = second.response();
+        assertFalse(firstResponse.isDone());
+        cache.complete(owner, success(), null);
+
+        assertEquals(ReturnCode.SUCCESS.getCode(), firstResponse.get().getResultCode());
+        assertEquals(ReturnCode.SUCCESS.getCode(), secondResponse.get().getResultCode());
+        // 每個呼叫端各自取得複本，修改結果代碼不影響其他呼叫端
+        firstResponse.get().setResultCode(ReturnCode.SERVER_BUSY.getCode());
+        assertEquals(ReturnCode.SUCCESS.getCode(), secondResponse.get().getResultCode());
+    }
+
+    @Test
+    void coalescedWaitersGetTheSingleError() {
+        ResponseCache cache = cache(TTL, 100, Long.MAX_VALUE);
+        ResponseCache.Reservation owner = cache.reserve("k1");
+        CompletableFuture<TandemMessageResponse> first = cache.reserve("k1").response();
+        CompletableFuture<TandemMessageResponse> second = cache.reserve("k1").response();
+        IllegalStateException error = new IllegalStateException("timeout");
+        cache.complete(owner, null, error);
+
+        assertSame(error, assertThrows(ExecutionException.class, first::get).getCause());
+        assertSame(error, assertThrows(ExecutionException.class, second::get).getCause());
+    }
+}
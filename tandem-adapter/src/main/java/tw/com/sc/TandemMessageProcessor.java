@@ -1,11 +1,24 @@
 package tw.com.sc;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
 import javax.jms.JMSException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import tw.com.sc.audit.PayloadAuditLogger;
 import tw.com.sc.client.TandemApiClient;
 import tw.com.sc.client.TandemApiException;
 import tw.com.sc.model.FilterConfig;
@@ -14,31 +27,59 @@ import tw.com.sc.model.txmsg.TandemMessage;
 import tw.com.sc.model.txmsg.TandemMessageHelper;
 import tw.com.sc.model.txmsg.TandemMessageRequest;
 import tw.com.sc.model.txmsg.TandemMessageResponse;
-import tw.com.sc.model.txmsg.TandemMessageSerializer;
 import tw.com.sc.mq.MqConnectionManager;
 
 /**
  * 進行 Tandem 訊息處理
  * 錯誤訊息處理
+ *
+ * 啟用 tandem.async.enabled 時，MQ 接收、Tandem 呼叫與回應放回 MQ 分為三個階段：
+ * worker 送出 Tandem 請求後即可處理下一筆訊息，Tandem 回應後由回應執行緒放回 MQ，
+ * 同時進行中的 Tandem 呼叫數量以 tandem.async.maxInFlight 限制。
+ *
+ * 啟用 mq.listener.batch 時由 processRequestMessage 回傳回應，與接收的請求在同一個 MQ 交易中 commit。
  */
 @Service
-public class TandemMessageProcessor implements MqConnectionManager.MessageHandler {
+public class TandemMessageProcessor implements MqConnectionManager.MessageHandler, DisposableBean {
     private final MqConnectionManager mqTransactionManager;
 
     private static final Logger logger = LoggerFactory.getLogger(TandemMessageProcessor.class);
 
     private final TandemApiClient tandemApiClient;
     private final FilterConfig filterConfig;
+    private final PayloadAuditLogger payloadAuditLogger;
+
+    private final boolean asyncEnabled;
+    private final int maxInFlight;
+    private final Semaphore inFlightPermits;
+    private final ExecutorService responseExecutor;
+    private final long shutdownTimeout;
 
     public TandemMessageProcessor(
             MqConnectionManager mqTransactionManager,
             TandemConfig tabdemConfig,
             TandemApiClient tandemApiClient,
-            FilterConfig filterConfig) {
+            FilterConfig filterConfig,
+            PayloadAuditLogger payloadAuditLogger,
+            MeterRegistry registry) {
         this.mqTransactionManager = mqTransactionManager;
         this.tandemApiClient = tandemApiClient;
-        this.mqTransactionManager.startListeningTxMessage(this::onRequestMessage);
         this.filterConfig = filterConfig;
+        this.payloadAuditLogger = payloadAuditLogger;
+
+        TandemConfig.AsyncConfig asyncConfig = tabdemConfig.getAsync();
+        this.asyncEnabled = asyncConfig.isEnabled();
+        this.maxInFlight = Math.max(1, asyncConfig.getMaxInFlight());
+        this.inFlightPermits = new Semaphore(maxInFlight);
+        this.shutdownTimeout = asyncConfig.getShutdownTimeout();
+        this.responseExecutor = asyncEnabled
+                ? Executors.newFixedThreadPool(Math.max(1, asyncConfig.getResponseThreads()))
+                : null;
+        Gauge.builder("tandem.async.inflight", inFlightPermits, permits -> maxInFlight - permits.availablePermits())
+                .description("Tandem API calls in progress on the async path")
+                .register(registry);
+
+        this.mqTransactionManager.startListeningTxMessage(this);
     }
 
     @Override
@@ -49,49 +90,38 @@ public class TandemMessageProcessor implements MqConnectionManager.MessageHandle
         }
 
         try {
-            String strResponse = ((javax.jms.TextMessage) message).getText();
-            if (strResponse == null || strResponse.trim().isEmpty()) {
+            TandemMessageRequest tandemRequestInIsis = mqTransactionManager.readTxRequest(message);
+            if (tandemRequestInIsis == null) {
                 logger.error("MQ 訊息內容為空");
                 return;
             }
 
-            logger.info("收到MQ訊息: {}", strResponse);
+            payloadAuditLogger.record("adapter.request", tandemRequestInIsis);
             String correlationId = message.getJMSMessageID();
 
-            TandemMessageRequest tandemRequestInIsis = TandemMessageHelper.RequestSerializer.fromJson(strResponse);
-            if (tandemRequestInIsis == null || tandemRequestInIsis.getMsgInData() == null) {
-                logger.error("無法解析 MQ 訊息內容: {}", strResponse);
+            if (tandemRequestInIsis.getMsgInData() == null) {
+                logger.error("無法解析 MQ 訊息內容: {}", tandemRequestInIsis);
                 return;
             }
 
             TandemMessage tandemMessage = TandemMessageHelper.RequestSerializer.getMessageBody(tandemRequestInIsis);
+            if (asyncEnabled) {
+                callTandemApiAsync(tandemRequestInIsis, tandemMessage, correlationId);
+                return;
+            }
+
             try {
                 // Invoke Tandem API
                 TandemMessage tandemResponse = tandemApiClient.callTandemApi(tandemMessage);
-
-
-                // 依據 strnkey 過濾掉不需要回應的訊息
-                String strnkey = tandemMessage.getMsgInData().getMsgStrnkeyNo();
-                if (isStrnkeyFiltered(strnkey)) {
-                    logger.info("Trnkey={} 的 Tandem 訊息不放進 MQ", strnkey);
-                    return;
-                }
-
-                String tandemResponseJson = TandemMessageSerializer.toJson(tandemResponse);
-                mqTransactionManager.putResponse(tandemResponseJson, correlationId);
-                logger.info("Tandem 處理成功， 將回應放回 MQ: {}", tandemResponseJson);
+                putTandemResponse(tandemMessage, tandemResponse, correlationId);
 
             } catch (TandemApiException e) {
-                logger.error("Tandem API 處理失敗: {}, 錯誤代碼: {}", e.getMessage(), e.getErrorCode());
-                TandemMessageResponse tandemResponse = TandemMessageHelper.buildResponse(tandemRequestInIsis);
-                tandemResponse.setResultCode(e.getErrorCode());
-                tandemResponse.setResultMessage(e.getMessage());
-                String tandemResponseJson = TandemMessageHelper.ResponseSerializer.toJson(tandemResponse);
-                // 將錯誤訊息回傳
-                mqTransactionManager.putResponse(tandemResponseJson, correlationId);
-                
+                putErrorResponse(tandemRequestInIsis, e, correlationId);
             }
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("等待 Tandem 呼叫名額時被中斷");
         } catch (JMSException e) {
             logger.error("處理 MQ 訊息時發生錯誤: {}", e.getMessage());
             //logger.error(ExceptionUtils.getStackTrace(e));
@@ -100,6 +130,159 @@ public class TandemMessageProcessor implements MqConnectionManager.MessageHandle
         }
     }
 
+    /**
+     * 批次接收時使用：回傳要放回 MQ 的回應而不直接放回，無法解析的訊息以例外結束
+     */
+    @Override
+    public CompletableFuture<Object> processRequestMessage(javax.jms.Message message) {
+        TandemMessageRequest tandemRequestInIsis;
+        try {
+            tandemRequestInIsis = mqTransactionManager.readTxRequest(message);
+        } catch (JMSException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (tandemRequestInIsis == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("MQ 訊息內容為空"));
+        }
+        payloadAuditLogger.record("adapter.request", tandemRequestInIsis);
+        if (tandemRequestInIsis.getMsgInData() == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("無法解析 MQ 訊息內容"));
+        }
+
+        TandemMessage tandemMessage = TandemMessageHelper.RequestSerializer.getMessageBody(tandemRequestInIsis);
+        if (!asyncEnabled) {
+            try {
+                return CompletableFuture.completedFuture(
+                        filterResponse(tandemMessage, tandemApiClient.callTandemApi(tandemMessage)));
+            } catch (TandemApiException e) {
+                return CompletableFuture.completedFuture(buildErrorResponse(tandemRequestInIsis, e));
+            }
+        }
+
+        try {
+            inFlightPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<TandemMessage> call;
+        try {
+            call = tandemApiClient.callTandemApiAsync(tandemMessage);
+        } catch (RuntimeException e) {
+            inFlightPermits.release();
+            return CompletableFuture.failedFuture(e);
+        }
+        return call.<Object>handle((tandemResponse, error) -> {
+            if (error == null) {
+                return filterResponse(tandemMessage, tandemResponse);
+            }
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof TandemApiException tandemApiException) {
+                return buildErrorResponse(tandemRequestInIsis, tandemApiException);
+            }
+            throw new CompletionException(cause);
+        }).whenComplete((reply, error) -> inFlightPermits.release());
+    }
+
+    /**
+     * 以非阻塞方式呼叫 Tandem，進行中的呼叫數量達上限時在此等待，讓背壓回到 MQ 監聽
+     */
+    private void callTandemApiAsync(TandemMessageRequest tandemRequestInIsis, TandemMessage tandemMessage,
+            String correlationId) throws InterruptedException {
+        inFlightPermits.acquire();
+        try {
+            tandemApiClient.callTandemApiAsync(tandemMessage)
+                    .whenCompleteAsync((tandemResponse, error) -> {
+                        try {
+                            if (error == null) {
+                                putTandemResponse(tandemMessage, tandemResponse, correlationId);
+                                return;
+                            }
+
+                            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                            if (cause instanceof TandemApiException tandemApiException) {
+                                putErrorResponse(tandemRequestInIsis, tandemApiException, correlationId);
+                            } else {
+                                logger.error("處理 Tandem 回應時發生未預期的錯誤", cause);
+                            }
+                        } finally {
+                            inFlightPermits.release();
+                        }
+                    }, this::executeResponse);
+        } catch (RuntimeException e) {
+            inFlightPermits.release();
+            throw e;
+        }
+    }
+
+    private void putTandemResponse(TandemMessage tandemMessage, TandemMessage tandemResponse, String correlationId) {
+        TandemMessage reply = filterResponse(tandemMessage, tandemResponse);
+        if (reply == null) {
+            return;
+        }
+
+        mqTransactionManager.putResponse(reply, correlationId);
+        logger.debug("Tandem 處理成功， 將回應放回 MQ: correlationId={}", correlationId);
+    }
+
+    /**
+     * 依據 strnkey 過濾掉不需要回應的訊息，過濾時回傳 null
+     */
+    private TandemMessage filterResponse(TandemMessage tandemMessage, TandemMessage tandemResponse) {
+        String strnkey = tandemMessage.getMsgInData().getMsgStrnkeyNo();
+        if (isStrnkeyFiltered(strnkey)) {
+            logger.info("Trnkey={} 的 Tandem 訊息不放進 MQ", strnkey);
+            return null;
+        }
+        return tandemResponse;
+    }
+
+    private void putErrorResponse(TandemMessageRequest tandemRequestInIsis, TandemApiException e,
+            String correlationId) {
+        // 將錯誤訊息回傳
+        mqTransactionManager.putResponse(buildErrorResponse(tandemRequestInIsis, e), correlationId);
+    }
+
+    private TandemMessageResponse buildErrorResponse(TandemMessageRequest tandemRequestInIsis, TandemApiException e) {
+        logger.error("Tandem API 處理失敗: {}, 錯誤代碼: {}", e.getMessage(), e.getErrorCode());
+        TandemMessageResponse tandemResponse = TandemMessageHelper.buildResponse(tandemRequestInIsis);
+        tandemResponse.setResultCode(e.getErrorCode());
+        tandemResponse.setResultMessage(e.getMessage());
+        return tandemResponse;
+    }
+
+    /**
+     * 回應執行緒已停止時改在 Tandem 回應的執行緒上放回 MQ，確保名額會釋放
+     */
+    private void executeResponse(Runnable command) {
+        try {
+            responseExecutor.execute(command);
+        } catch (RejectedExecutionException e) {
+            command.run();
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (responseExecutor == null) {
+            return;
+        }
+        // 先停止 MQ 監聽，等待進行中的 Tandem 呼叫完成並把回應放回 MQ 後才停止回應執行緒
+        mqTransactionManager.stopListening();
+        long deadline = System.currentTimeMillis() + shutdownTimeout;
+        if (inFlightPermits.tryAcquire(maxInFlight, shutdownTimeout, TimeUnit.MILLISECONDS)) {
+            inFlightPermits.release(maxInFlight);
+        } else {
+            logger.warn("等待進行中的 Tandem 呼叫逾時，尚有 {} 筆未完成", maxInFlight - inFlightPermits.availablePermits());
+        }
+        responseExecutor.shutdown();
+        if (!responseExecutor.awaitTermination(Math.max(1, deadline - System.currentTimeMillis()),
+                TimeUnit.MILLISECONDS)) {
+            logger.warn("等待 Tandem 回應放回 MQ 逾時");
+            responseExecutor.shutdownNow();
+        }
+    }
+
     private boolean isStrnkeyFiltered(String strnkey) {
         if (filterConfig.getStrnkeys() == null || filterConfig.getStrnkeys().isEmpty()) {
             return false;
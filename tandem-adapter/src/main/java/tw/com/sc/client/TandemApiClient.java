@@ -1,7 +1,17 @@
 package tw.com.sc.client;
 
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
@@ -12,9 +22,11 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import tw.com.sc.audit.PayloadAuditLogger;
 import tw.com.sc.errorcode.ReturnCode;
 import tw.com.sc.model.TandemConfig;
 import tw.com.sc.model.txmsg.TandemMessage;
+import tw.com.sc.model.txmsg.TandemMessageSerializer;
 
 /**
  * Tandem API Client
@@ -26,13 +38,18 @@ public class TandemApiClient {
     private static final Logger logger = LoggerFactory.getLogger(TandemApiClient.class);
 
     private final RestTemplate restTemplate;
+    private final CloseableHttpAsyncClient httpAsyncClient;
     private final String url;
     private final HttpHeaders headers;
+    private final PayloadAuditLogger payloadAuditLogger;
 
-    public TandemApiClient(TandemConfig tabdemConfig) {
+    public TandemApiClient(TandemConfig tabdemConfig, RestTemplate tandemRestTemplate,
+            ObjectProvider<CloseableHttpAsyncClient> tandemHttpAsyncClient, PayloadAuditLogger payloadAuditLogger) {
 
-        this.restTemplate = new RestTemplate();
+        this.restTemplate = tandemRestTemplate;
+        this.httpAsyncClient = tandemHttpAsyncClient.getIfAvailable();
         this.url = tabdemConfig.getApi().getUrl();
+        this.payloadAuditLogger = payloadAuditLogger;
 
         this.headers = new HttpHeaders();
         this.headers.setBasicAuth(
@@ -56,7 +73,7 @@ public class TandemApiClient {
 
         if (response.getStatusCode() == HttpStatus.OK) {
             TandemMessage responseBody = response.getBody();
-                logger.info("Tandem Service API 回應成功: {}", responseBody);
+                payloadAuditLogger.record("tandem.response", responseBody);
                 return responseBody;
             } else {
                 logger.error("Tandem Service API 呼叫失敗: {}", response.getStatusCode());
@@ -73,4 +90,63 @@ public class TandemApiClient {
                     e);
         }
     }
+
+    /**
+     * 非阻塞呼叫 Tandem API，需啟用 tandem.async.enabled
+     * 失敗時以 TandemApiException 結束，錯誤代碼與 callTandemApi 相同。
+     */
+    public CompletableFuture<TandemMessage> callTandemApiAsync(TandemMessage tandemMessage) {
+        if (httpAsyncClient == null) {
+            throw new IllegalStateException("未啟用 tandem.async.enabled，無法使用非同步呼叫");
+        }
+
+        SimpleHttpRequest request = SimpleRequestBuilder.post(url)
+                .setHeader(HttpHeaders.AUTHORIZATION, headers.getFirst(HttpHeaders.AUTHORIZATION))
+                .setBody(TandemMessageSerializer.toJson(tandemMessage), ContentType.APPLICATION_JSON)
+                .build();
+
+        CompletableFuture<TandemMessage> result = new CompletableFuture<>();
+        httpAsyncClient.execute(request, new FutureCallback<SimpleHttpResponse>() {
+            @Override
+            public void completed(SimpleHttpResponse response) {
+                if (response.getCode() != HttpStatus.OK.value()) {
+                    logger.error("Tandem Service API 呼叫失敗: {}", response.getCode());
+                    result.completeExceptionally(new TandemApiException(
+                            "Tandem Service API 回應非 200 狀態碼: " + response.getCode(),
+                            ReturnCode.TANDEM_HTTP_ERROR.getCode()));
+                    return;
+                }
+
+                try {
+                    TandemMessage responseBody = TandemMessageSerializer.fromJson(
+                            new String(response.getBodyBytes(), StandardCharsets.UTF_8));
+                    payloadAuditLogger.record("tandem.response", responseBody);
+                    result.complete(responseBody);
+                } catch (RuntimeException e) {
+                    logger.error("Tandem Service API 回應格式錯誤", e);
+                    result.completeExceptionally(new TandemApiException(
+                            "Tandem Service API 回應格式錯誤: " + e.getMessage(),
+                            ReturnCode.TANDEM_RESPONSE_ERROR.getCode(),
+                            e));
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                logger.error("Tandem Service API 呼叫發生錯誤", e);
+                result.completeExceptionally(new TandemApiException(
+                        "Tandem Service API 呼叫發生錯誤: " + e.getMessage(),
+                        ReturnCode.TANDEM_REQUEST_ERROR.getCode(),
+                        e));
+            }
+
+            @Override
+            public void cancelled() {
+                result.completeExceptionally(new TandemApiException(
+                        "Tandem Service API 呼叫已取消",
+                        ReturnCode.TANDEM_REQUEST_ERROR.getCode()));
+            }
+        });
+        return result;
+    }
 }
@@ -0,0 +1,117 @@
+package tw.com.sc.client;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.client.RestTemplate;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import tw.com.sc.model.TandemConfig;
+import tw.com.sc.model.txmsg.TxMessageCodec;
+
+/**
+ * 呼叫 Tandem API 使用的 HTTP 連線池
+ * 重複使用 keep-alive 連線，避免每次呼叫都重新建立 TCP/TLS 連線。
+ */
+@Configuration
+public class TandemHttpClientConfig {
+
+    @Bean
+    public PoolingHttpClientConnectionManager tandemConnectionManager(TandemConfig tandemConfig,
+            MeterRegistry registry) {
+        TandemConfig.HttpConfig http = tandemConfig.getHttp();
+
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(http.getMaxTotal())
+                .setMaxConnPerRoute(http.getMaxPerRoute())
+                .setDefaultConnectionConfig(connectionConfig(http))
+                .build();
+
+        // leased / pending / available 連線數指標 (httpcomponents.httpclient.pool.*)
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "tandem-api").bindTo(registry);
+        return connectionManager;
+    }
+
+    @Bean
+    public CloseableHttpClient tandemHttpClient(TandemConfig tandemConfig,
+            PoolingHttpClientConnectionManager tandemConnectionManager) {
+        TandemConfig.HttpConfig http = tandemConfig.getHttp();
+
+        return HttpClients.custom()
+                .setConnectionManager(tandemConnectionManager)
+                .setDefaultRequestConfig(requestConfig(http))
+                .setKeepAliveStrategy((response, context) -> TimeValue.ofMilliseconds(http.getKeepAlive()))
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(http.getIdleEvictTime()))
+                .build();
+    }
+
+    /**
+     * 非阻塞的 HTTP client，只有啟用 tandem.async.enabled 時才建立
+     * 少量的 I/O 執行緒即可同時處理大量進行中的 Tandem 呼叫。
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "tandem.async", name = "enabled", havingValue = "true")
+    public CloseableHttpAsyncClient tandemHttpAsyncClient(TandemConfig tandemConfig, MeterRegistry registry) {
+        TandemConfig.HttpConfig http = tandemConfig.getHttp();
+
+        PoolingAsyncClientConnectionManager connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(http.getMaxTotal())
+                .setMaxConnPerRoute(http.getMaxPerRoute())
+                .setDefaultConnectionConfig(connectionConfig(http))
+                .build();
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "tandem-api-async").bindTo(registry);
+
+        CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig(http))
+                .setKeepAliveStrategy((response, context) -> TimeValue.ofMilliseconds(http.getKeepAlive()))
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(http.getIdleEvictTime()))
+                .build();
+        client.start();
+        return client;
+    }
+
+    /**
+     * JSON 轉換改用 txmsg 共用的 ObjectMapper；與原本 RestTemplate 的預設相同，Tandem 回應多出的欄位不視為錯誤
+     */
+    @Bean
+    public RestTemplate tandemRestTemplate(CloseableHttpClient tandemHttpClient) {
+        RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(tandemHttpClient));
+        restTemplate.getMessageConverters().replaceAll(converter -> converter instanceof MappingJackson2HttpMessageConverter
+                ? new MappingJackson2HttpMessageConverter(TxMessageCodec.lenientObjectMapper())
+                : converter);
+        return restTemplate;
+    }
+
+    private ConnectionConfig connectionConfig(TandemConfig.HttpConfig http) {
+        return ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(http.getConnectTimeout()))
+                .setSocketTimeout(Timeout.ofMilliseconds(http.getResponseTimeout()))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                .build();
+    }
+
+    private RequestConfig requestConfig(TandemConfig.HttpConfig http) {
+        return RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(http.getConnectionRequestTimeout()))
+                .setResponseTimeout(Timeout.ofMilliseconds(http.getResponseTimeout()))
+                .build();
+    }
+}
@@ -10,6 +10,8 @@ import lombok.Data;
 @ConfigurationProperties(prefix = "tandem")
 public class TandemConfig {
     private ApiConfig api;
+    private HttpConfig http = new HttpConfig();
+    private AsyncConfig async = new AsyncConfig();
 
     @Data
     public static class ApiConfig {
@@ -17,6 +19,28 @@ public class TandemConfig {
         private String username;
         private String password;
     }
+
+    @Data
+    public static class HttpConfig {
+        private int maxTotal = 50;
+        private int maxPerRoute = 50;
+        private int connectTimeout = 3000;
+        private int connectionRequestTimeout = 3000;
+        private int responseTimeout = 30000;
+        private int keepAlive = 30000;
+        private int idleEvictTime = 30000;
+    }
+
+    @Data
+    public static class AsyncConfig {
+        private boolean enabled = false;
+        private int maxInFlight = 200;
+        private int responseThreads = 4;
+        /**
+         * 停止時等待進行中的 Tandem 呼叫完成並放回 MQ 的時間(單位為 milliseconds)
+         */
+        private int shutdownTimeout = 10000;
+    }
 }
 
 